@@ -1,9 +1,12 @@
 //Laura Loaiza | lsl8 | 12/08/25
 package Project.Client;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InvalidObjectException;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -27,14 +30,18 @@ import Project.Client.Interfaces.IGameEvents;
 import Project.Common.Command;
 import Project.Common.ConnectionPayload;
 import Project.Common.Constants;
+import Project.Common.HeartbeatPayload;
 import Project.Common.LoggerUtil;
 import Project.Common.Payload;
+import Project.Common.PayloadCodec;
 import Project.Common.PayloadType;
 import Project.Common.Phase;
 import Project.Common.PointsPayload;
+import Project.Common.PresencePayload;
 import Project.Common.ReadyPayload;
 import Project.Common.RoomAction;
 import Project.Common.RoomResultPayload;
+import Project.Common.RosterPayload;
 import Project.Common.TextFX;
 import Project.Common.User;
 import Project.Common.TextFX.Color;
@@ -51,18 +58,25 @@ public enum Client {
         LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
         config.setFileSizeLimit(2048 * 1024); // 2MB
         config.setFileCount(1);
+        config.setAsync(true); // the reader thread logs every payload, keep disk/console I/O off it
         config.setLogLocation("client.log");
         // Set the logger configuration
         LoggerUtil.INSTANCE.setConfig(config);
     }
 
     private Socket server = null;
-    private ObjectOutputStream out = null;
-    private ObjectInputStream in = null;
+    private DataOutputStream out = null;
+    private DataInputStream in = null;
     final Pattern ipAddressPattern = Pattern
             .compile("/connect\\s+(\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}:\\d{3,5})");
     final Pattern localhostPattern = Pattern.compile("/connect\\s+(localhost:\\d{3,5})");
     private volatile boolean isRunning = true; // volatile for thread-safe visibility
+    // resuming after the connection drops (see reconnect())
+    private static final int MAX_RECONNECT_ATTEMPTS = 5;
+    private volatile String resumeToken = null; // from the server's CLIENT_ID
+    private volatile boolean leaving = false; // set by /disconnect so a closed socket isn't a dropped one
+    private String lastAddress;
+    private int lastPort;
     private final ConcurrentHashMap<Long, User> knownClients = new ConcurrentHashMap<Long, User>();
     private User myUser = new User();
     private Phase currentPhase = Phase.READY;
@@ -125,9 +139,9 @@ public enum Client {
         try {
             server = new Socket(address, port);
             // channel to send to server
-            out = new ObjectOutputStream(server.getOutputStream());
+            out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
             // channel to listen to server
-            in = new ObjectInputStream(server.getInputStream());
+            in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
             LoggerUtil.INSTANCE.info("Client connected");
             CompletableFuture.runAsync(this::listenToServer);
         } catch (UnknownHostException e) {
@@ -148,12 +162,15 @@ public enum Client {
      */
     public boolean connect(String address, int port, String username) {
         myUser.setClientName(username);
+        lastAddress = address;
+        lastPort = port;
+        leaving = false;
         try {
             server = new Socket(address, port);
             // channel to send to server
-            out = new ObjectOutputStream(server.getOutputStream());
+            out = new DataOutputStream(new BufferedOutputStream(server.getOutputStream()));
             // channel to listen to server
-            in = new ObjectInputStream(server.getInputStream());
+            in = new DataInputStream(new BufferedInputStream(server.getInputStream()));
             LoggerUtil.INSTANCE.info("Client connected");
             // Use CompletableFuture to run listenToServer() in a separate thread
             CompletableFuture.runAsync(this::listenToServer);
@@ -353,8 +370,8 @@ public enum Client {
                 payload.setPayloadType(PayloadType.ROOM_LEAVE);
                 break;
             case RoomAction.LIST:
-                payload.setPayloadType(PayloadType.ROOM_LIST);
-                break;
+                sendRoomList(roomName, 0, 0);
+                return;
             default:
                 LoggerUtil.INSTANCE.warning(TextFX.colorize("Invalid room action", Color.RED));
                 break;
@@ -362,6 +379,39 @@ public enum Client {
         sendToServer(payload);
     }
 
+    /**
+     * Asks the server for one page of rooms whose name starts with prefix
+     *
+     * @param prefix case-insensitive, empty lists every room
+     * @param offset index of the first match to return
+     * @param limit  page size, 0 for the server default
+     * @throws IOException
+     */
+    public void sendRoomList(String prefix, int offset, int limit) throws IOException {
+        RoomResultPayload payload = new RoomResultPayload();
+        payload.setPayloadType(PayloadType.ROOM_LIST);
+        payload.setMessage(prefix);
+        payload.setOffset(offset);
+        payload.setLimit(limit);
+        sendToServer(payload);
+    }
+
+    /**
+     * Asks for more of the current room's members (large rooms only send the
+     * first page on join); the server also starts sending presence updates
+     *
+     * @param offset index of the first member to return
+     * @param limit  page size, 0 for the server default
+     * @throws IOException
+     */
+    public void sendRosterPage(int offset, int limit) throws IOException {
+        RosterPayload payload = new RosterPayload();
+        payload.setPayloadType(PayloadType.ROSTER);
+        payload.setOffset(offset);
+        payload.setLimit(limit);
+        sendToServer(payload);
+    }
+
     /**
      * Sends a reverse message action to the server
      *
@@ -382,6 +432,8 @@ public enum Client {
      * @throws IOException
      */
     public void sendDisconnect() throws IOException {
+        leaving = true;
+        resumeToken = null;
         Payload payload = new Payload();
         payload.setPayloadType(PayloadType.DISCONNECT);
         sendToServer(payload);
@@ -413,14 +465,32 @@ public enum Client {
     private void sendClientName(String name) throws IOException {
         ConnectionPayload payload = new ConnectionPayload();
         payload.setClientName(name);
+        payload.setResumeToken(resumeToken); // null on the first connect
         payload.setPayloadType(PayloadType.CLIENT_CONNECT);
         sendToServer(payload);
     }
 
+    /**
+     * Answers a server PING so it can measure round-trip time and knows we're
+     * still here
+     *
+     * @param sequence echoed from the PING
+     * @throws IOException
+     */
+    private void sendPong(long sequence) throws IOException {
+        HeartbeatPayload payload = new HeartbeatPayload();
+        payload.setPayloadType(PayloadType.PONG);
+        payload.setSequence(sequence);
+        sendToServer(payload);
+    }
+
     private void sendToServer(Payload payload) throws IOException {
         if (isConnected()) {
-            out.writeObject(payload);
-            out.flush();
+            // the UI and the console can both send, keep frames whole
+            synchronized (out) {
+                PayloadCodec.write(out, payload);
+                out.flush();
+            }
         } else {
             LoggerUtil.INSTANCE.warning(
                     "Not connected to server (hint: type `/connect host:port` without the quotes and replace host/port with the necessary info)");
@@ -443,7 +513,14 @@ public enum Client {
     private void listenToServer() {
         try {
             while (isRunning && isConnected()) {
-                Payload fromServer = (Payload) in.readObject(); // blocking read
+                Payload fromServer;
+                try {
+                    fromServer = PayloadCodec.read(in); // blocking read
+                } catch (InvalidObjectException ioe) {
+                    // frame boundaries are intact so only this payload is lost
+                    LoggerUtil.INSTANCE.severe("Error reading object as specified type:", ioe);
+                    continue;
+                }
                 if (fromServer != null) {
                     processPayload(fromServer);
 
@@ -452,8 +529,6 @@ public enum Client {
                     break;
                 }
             }
-        } catch (ClassCastException | ClassNotFoundException cce) {
-            LoggerUtil.INSTANCE.severe("Error reading object as specified type:", cce);
         } catch (IOException e) {
             if (isRunning) {
                 LoggerUtil.INSTANCE.warning("Connection dropped");
@@ -465,6 +540,32 @@ public enum Client {
             closeServerConnection();
         }
         LoggerUtil.INSTANCE.info("listenToServer thread stopped");
+        if (isRunning && !leaving && resumeToken != null) {
+            reconnect();
+        }
+    }
+
+    /**
+     * Tries to get back to the same server after the connection dropped; the
+     * resume token lets the server put us back in the same room (and game) and
+     * replay what we missed instead of starting a new session
+     */
+    private void reconnect() {
+        long delay = 500;
+        for (int attempt = 1; attempt <= MAX_RECONNECT_ATTEMPTS && isRunning && !leaving; attempt++) {
+            LoggerUtil.INSTANCE.info(String.format("Reconnecting to %s:%s (attempt %s)", lastAddress, lastPort, attempt));
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (connect(lastAddress, lastPort, myUser.getClientName())) {
+                return; // the new listener thread takes over
+            }
+            delay = Math.min(delay * 2, 8000);
+        }
+        LoggerUtil.INSTANCE.warning("Unable to reconnect");
     }
 
     private void processPayload(Payload payload) {
@@ -494,6 +595,12 @@ public enum Client {
             case SYNC_CLIENT:
                 processRoomAction(payload);
                 break;
+            case PRESENCE:
+                processPresence(payload);
+                break;
+            case ROSTER:
+                processRoster(payload);
+                break;
             case ROOM_LIST:
                 processRoomsList(payload);
                 break;
@@ -545,6 +652,12 @@ public enum Client {
             case POINTS_SYNC:
                 processPoints(payload);
             break;
+            case PING:
+                processPing(payload);
+                break;
+            case PONG:
+                // the client doesn't send PINGs; nothing to match against
+                break;
 
             default:
                 LoggerUtil.INSTANCE.warning(TextFX.colorize(
@@ -590,6 +703,18 @@ public enum Client {
     }
 //lsl8 | 12/08/25
     // Start process*() methods
+    private void processPing(Payload payload) {
+        if (!(payload instanceof HeartbeatPayload)) {
+            error("Invalid payload subclass for processPing");
+            return;
+        }
+        try {
+            sendPong(((HeartbeatPayload) payload).getSequence());
+        } catch (IOException e) {
+            LoggerUtil.INSTANCE.warning("Unable to answer heartbeat");
+        }
+    }
+
     private void processPoints(Payload payload) {
         if (!(payload instanceof PointsPayload)) {
             error("Invalid payload subclass for processCardAdd");
@@ -717,14 +842,17 @@ public enum Client {
     }
 
     private void processClientData(Payload payload) {
-        if (myUser.getClientId() != Constants.DEFAULT_CLIENT_ID) {
-            LoggerUtil.INSTANCE.warning(TextFX.colorize("Client ID already set, this shouldn't happen", Color.YELLOW));
-
+        long previousId = myUser.getClientId();
+        boolean resumed = previousId == payload.getClientId();
+        if (previousId != Constants.DEFAULT_CLIENT_ID && !resumed) {
+            // the old session couldn't be resumed; the roster that follows rebuilds the list
+            knownClients.remove(previousId);
         }
+        resumeToken = ((ConnectionPayload) payload).getResumeToken();
         myUser.setClientId(payload.getClientId());
         myUser.setClientName(((ConnectionPayload) payload).getClientName());// confirmation from Server
         knownClients.put(myUser.getClientId(), myUser);
-        LoggerUtil.INSTANCE.info(TextFX.colorize("Connected", Color.GREEN));
+        LoggerUtil.INSTANCE.info(TextFX.colorize(resumed ? "Reconnected" : "Connected", Color.GREEN));
 
         passToUICallback(IConnectionEvents.class, e -> e.onReceiveClientId(myUser.getClientId()));
     }
@@ -807,6 +935,74 @@ public enum Client {
         }
     }
 
+    /**
+     * Adds a roster page to knownClients (the first page replaces them) and
+     * hands the UI the whole page in one callback
+     *
+     * @param payload
+     */
+    private void processRoster(Payload payload) {
+        if (!(payload instanceof RosterPayload)) {
+            error("Invalid payload subclass for processRoster");
+            return;
+        }
+        RosterPayload rosterPayload = (RosterPayload) payload;
+        if (rosterPayload.getOffset() == 0) {
+            knownClients.clear();
+            passToUICallback(IRoomEvents.class,
+                    e -> e.onRoomAction(Constants.DEFAULT_CLIENT_ID, null, false, true));
+        }
+        long[] clientIds = rosterPayload.getClientIds();
+        String[] clientNames = rosterPayload.getClientNames();
+        for (int i = 0; i < clientIds.length; i++) {
+            User user = new User();
+            user.setClientId(clientIds[i]);
+            user.setClientName(clientNames[i]);
+            knownClients.put(clientIds[i], user);
+        }
+        passToUICallback(IRoomEvents.class, e -> e.onRosterPage(clientIds, clientNames,
+                rosterPayload.getOffset(), rosterPayload.getTotal()));
+    }
+
+    /**
+     * Applies a batched room delta; joins already known and leaves for unknown
+     * clients are skipped, so only real changes reach the UI
+     *
+     * @param payload
+     */
+    private void processPresence(Payload payload) {
+        if (!(payload instanceof PresencePayload)) {
+            error("Invalid payload subclass for processPresence");
+            return;
+        }
+        PresencePayload presencePayload = (PresencePayload) payload;
+        for (long clientId : presencePayload.getLeftIds()) {
+            if (isMyClientId(clientId) || !knownClients.containsKey(clientId)) {
+                continue;
+            }
+            // the UI resolves the name, so notify it before removing
+            passToUICallback(IRoomEvents.class, e -> e.onRoomAction(clientId, null, false, false));
+            User user = knownClients.remove(clientId);
+            LoggerUtil.INSTANCE.info(
+                    TextFX.colorize(String.format("%s left the room", user.getDisplayName()), Color.YELLOW));
+        }
+        long[] joinedIds = presencePayload.getJoinedIds();
+        String[] joinedNames = presencePayload.getJoinedNames();
+        for (int i = 0; i < joinedIds.length; i++) {
+            long clientId = joinedIds[i];
+            if (isMyClientId(clientId) || knownClients.containsKey(clientId)) {
+                continue;
+            }
+            User user = new User();
+            user.setClientId(clientId);
+            user.setClientName(joinedNames[i]);
+            knownClients.put(clientId, user);
+            passToUICallback(IRoomEvents.class, e -> e.onRoomAction(clientId, null, true, false));
+            LoggerUtil.INSTANCE.info(
+                    TextFX.colorize(String.format("%s joined the room", user.getDisplayName()), Color.YELLOW));
+        }
+    }
+
     private void processMessage(Payload payload) {
         LoggerUtil.INSTANCE.info(TextFX.colorize(payload.getMessage(), Color.BLUE));
 
@@ -29,6 +29,10 @@ public enum ClientConsole {
         client.sendRoomAction(roomName, action);
     }
 
+    public void sendRosterPage(int offset, int limit) throws IOException {
+        client.sendRosterPage(offset, limit);
+    }
+
     public void sendReady() throws IOException {
         client.sendReady();
     }
@@ -49,6 +49,7 @@ public class ClientUI extends JFrame implements ICardControls, IConnectionEvents
         LoggerUtil.LoggerConfig config = new LoggerUtil.LoggerConfig();
         config.setFileSizeLimit(2048 * 1024); // 2MB
         config.setFileCount(1);
+        config.setAsync(true); // the reader thread logs every payload, keep disk/console I/O off it
         config.setLogLocation("client-ui.log");
         // Set the logger configuration
         LoggerUtil.INSTANCE.setConfig(config);
@@ -221,6 +222,11 @@ public class ClientUI extends JFrame implements ICardControls, IConnectionEvents
         }
     }
 
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        // unused
+    }
+
     @Override
     public void onReceiveRoomList(List<String> rooms, String message) {
         // unused
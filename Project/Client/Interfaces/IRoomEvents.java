@@ -21,4 +21,17 @@ public interface IRoomEvents extends IClientEvents {
      * @param roomName The room name.
      */
     void onRoomAction(long clientId, String roomName, boolean isJoin, boolean isQuiet);
+
+    /**
+     * Receives a page of the room's members in one batch; at offset 0 the user
+     * list was reset right before.
+     *
+     * @param clientIds   The client ids.
+     * @param clientNames The client names, same order as clientIds.
+     * @param offset      Position of the first entry in the room's member list.
+     * @param total       Members in the room (not counting this client); more
+     *                    than offset + clientIds.length means there are more
+     *                    pages to request.
+     */
+    void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total);
 }
\ No newline at end of file
@@ -253,6 +253,11 @@ public class ChatGameView extends JPanel implements IRoomEvents, IPhaseEvent, IR
         }
     }
 
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        // unused
+    }
+
     @Override
     public void onReceivePhase(Phase phase) {
         showGameView();
@@ -222,6 +222,11 @@ public class ChatView extends JPanel implements IMessageEvents, IConnectionEvent
         }
     }
 
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        // unused
+    }
+
     @Override
     public void onReceiveRoomList(List<String> rooms, String message) {
         // unused
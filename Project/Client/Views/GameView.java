@@ -479,6 +479,14 @@ public class GameView extends JPanel implements IMessageEvents, IPointsEvent,
         refreshPlayerList();
     }
 
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        for (long clientId : clientIds) {
+            getOrCreatePlayer(clientId);
+        }
+        refreshPlayerList();
+    }
+
     @Override
     public void onReceiveRoomList(List<String> rooms, String message) {
     }
@@ -242,4 +242,9 @@ public class RoomsView extends JPanel implements IRoomEvents {
     public void onRoomAction(long clientId, String roomName, boolean isJoin, boolean isQuiet) {
         // unused
     }
+
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        // unused
+    }
 }
@@ -5,11 +5,15 @@ import java.awt.Color;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
+import javax.swing.BoundedRangeModel;
 import javax.swing.Box;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
@@ -32,6 +36,16 @@ public class UserListView extends JPanel
     private final JPanel userListArea;
     private final GridBagConstraints lastConstraints; // Keep track of the last constraints for the glue
     private final HashMap<Long, UserListItem> userItemsMap; // Maintain a map of client IDs to UserListItems
+    private final JScrollBar scrollBar;
+    // only a window of the roster is kept as items; pages are requested as the
+    // user scrolls toward either edge and items past the window are dropped
+    // (EDT only)
+    private int windowStart = 0; // roster offset of the first item
+    private int rosterTotal = 0;
+    private boolean pageRequested = false;
+    private static final int SCROLL_MARGIN = 50; // px from an edge that triggers the next page
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_LOADED = PAGE_SIZE * 3;
 
     public UserListView() {
         super(new BorderLayout(10, 10));
@@ -45,6 +59,8 @@ public class UserListView extends JPanel
         scroll.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         scroll.setBorder(new EmptyBorder(0, 0, 0, 0));
         this.add(scroll, BorderLayout.CENTER);
+        scrollBar = scroll.getVerticalScrollBar();
+        scrollBar.addAdjustmentListener(e -> requestNextPageIfNeeded());
 
         // Add vertical glue to push items to the top
         lastConstraints = new GridBagConstraints();
@@ -61,31 +77,83 @@ public class UserListView extends JPanel
      */
     private void addUserListItem(long clientId, String clientName) {
         SwingUtilities.invokeLater(() -> {
-            if (userItemsMap.containsKey(clientId)) {
-                LoggerUtil.INSTANCE.warning("User already in the list: " + clientName);
-                return;
+            // joins land at the end of the roster; only show them if the
+            // window reaches that far
+            boolean atEnd = windowStart + userItemsMap.size() >= rosterTotal;
+            if (!userItemsMap.containsKey(clientId)) {
+                rosterTotal++;
             }
-            LoggerUtil.INSTANCE.info("Adding user to list: " + clientName);
-            UserListItem userItem = new UserListItem(clientId, clientName);
-            GridBagConstraints gbc = new GridBagConstraints();
-            gbc.gridx = 0;
-            gbc.gridy = userListArea.getComponentCount() - 1;
-            gbc.weightx = 1;
-            gbc.anchor = GridBagConstraints.NORTH;
-            gbc.fill = GridBagConstraints.BOTH;
-            gbc.insets = new Insets(0, 0, 5, 5);
-            // Remove the last glue component if it exists
-            if (lastConstraints != null) {
-                int index = userListArea.getComponentCount() - 1;
-                if (index > -1) {
-                    userListArea.remove(index);
-                }
+            if (atEnd && insertUserListItem(clientId, clientName, userItemsMap.size()) != null) {
+                int removedHeight = trimWindow(true);
+                userListArea.revalidate();
+                userListArea.repaint();
+                shiftScroll(List.of(), removedHeight);
             }
-            userListArea.add(userItem, gbc);
-            userListArea.add(Box.createVerticalGlue(), lastConstraints);
-            userItemsMap.put(clientId, userItem);
-            userListArea.revalidate();
-            userListArea.repaint();
+        });
+    }
+
+    /**
+     * Adds the item at the given position without revalidating; must be called
+     * on the EDT.
+     *
+     * @return the new item, or null if the user was already listed
+     */
+    private UserListItem insertUserListItem(long clientId, String clientName, int position) {
+        if (userItemsMap.containsKey(clientId)) {
+            LoggerUtil.INSTANCE.warning("User already in the list: " + clientName);
+            return null;
+        }
+        LoggerUtil.INSTANCE.info("Adding user to list: " + clientName);
+        UserListItem userItem = new UserListItem(clientId, clientName);
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.gridx = 0;
+        gbc.gridy = GridBagConstraints.RELATIVE; // rows follow component order
+        gbc.weightx = 1;
+        gbc.anchor = GridBagConstraints.NORTH;
+        gbc.fill = GridBagConstraints.BOTH;
+        gbc.insets = new Insets(0, 0, 5, 5);
+        userListArea.add(userItem, gbc, position);
+        userItemsMap.put(clientId, userItem);
+        return userItem;
+    }
+
+    /**
+     * Drops items beyond MAX_LOADED from one end of the window; must be called
+     * on the EDT.
+     *
+     * @param fromFront true to drop from the top, false from the bottom
+     * @return the height removed above the viewport (0 when dropping from the
+     *         bottom)
+     */
+    private int trimWindow(boolean fromFront) {
+        int removedHeight = 0;
+        while (userItemsMap.size() > MAX_LOADED) {
+            int index = fromFront ? 0 : userItemsMap.size() - 1;
+            UserListItem item = (UserListItem) userListArea.getComponent(index);
+            if (fromFront) {
+                removedHeight += item.getHeight() + 5; // bottom inset
+                windowStart++;
+            }
+            userListArea.remove(index);
+            userItemsMap.values().remove(item);
+        }
+        return removedHeight;
+    }
+
+    /**
+     * Keeps the same items under the viewport after rows were added or removed
+     * above it; runs after the pending layout pass.
+     */
+    private void shiftScroll(List<UserListItem> added, int removedHeight) {
+        if (added.isEmpty() && removedHeight == 0) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            int delta = -removedHeight;
+            for (UserListItem item : added) {
+                delta += item.getHeight() + 5;
+            }
+            scrollBar.setValue(scrollBar.getValue() + delta);
         });
     }
 
@@ -98,6 +166,7 @@ public class UserListView extends JPanel
             try {
                 UserListItem item = userItemsMap.remove(clientId);
                 if (item != null) {
+                    rosterTotal = Math.max(0, rosterTotal - 1);
                     userListArea.remove(item);
                     userListArea.revalidate();
                     userListArea.repaint();
@@ -116,7 +185,11 @@ public class UserListView extends JPanel
             LoggerUtil.INSTANCE.info("Clearing user list");
             try {
                 userItemsMap.clear();
+                windowStart = 0;
+                rosterTotal = 0;
+                pageRequested = false;
                 userListArea.removeAll();
+                userListArea.add(Box.createVerticalGlue(), lastConstraints);
                 userListArea.revalidate();
                 userListArea.repaint();
             } catch (Exception e) {
@@ -144,6 +217,94 @@ public class UserListView extends JPanel
         }
     }
 
+    @Override
+    public void onRosterPage(long[] clientIds, String[] clientNames, int offset, int total) {
+        // one EDT task and one layout pass for the whole room
+        String[] displayNames = new String[clientIds.length];
+        for (int i = 0; i < clientIds.length; i++) {
+            displayNames[i] = ClientConsole.INSTANCE.getDisplayNameFromId(clientIds[i]);
+        }
+        SwingUtilities.invokeLater(() -> {
+            int windowEnd = windowStart + userItemsMap.size();
+            rosterTotal = total;
+            pageRequested = false;
+            List<UserListItem> added = new ArrayList<>();
+            int removedHeight = 0;
+            if (offset < windowStart && offset + clientIds.length >= windowStart) {
+                // scrolling back up: prepend the part before the window
+                int count = Math.min(windowStart - offset, MAX_LOADED);
+                int first = windowStart - offset - count;
+                LoggerUtil.INSTANCE.info(String.format("Adding %s users to list (%s-%s of %s)", count,
+                        offset + first + 1, windowStart, total));
+                int position = 0;
+                for (int i = first; i < first + count; i++) {
+                    UserListItem item = insertUserListItem(clientIds[i], displayNames[i], position);
+                    if (item != null) {
+                        added.add(item);
+                        position++;
+                    }
+                }
+                windowStart -= position;
+                trimWindow(false);
+            } else {
+                if (offset > windowEnd || offset < windowStart) {
+                    // doesn't touch the window (a fresh roster or the window
+                    // moved on); start over from this page
+                    userItemsMap.clear();
+                    userListArea.removeAll();
+                    userListArea.add(Box.createVerticalGlue(), lastConstraints);
+                    windowStart = offset;
+                    windowEnd = offset;
+                }
+                // a full roster can be far bigger than the window
+                int skip = windowEnd - offset;
+                int count = Math.max(0, Math.min(clientIds.length - skip, MAX_LOADED));
+                LoggerUtil.INSTANCE.info(String.format("Adding %s users to list (%s-%s of %s)", count,
+                        windowEnd + 1, windowEnd + count, total));
+                for (int i = skip; i < skip + count; i++) {
+                    insertUserListItem(clientIds[i], displayNames[i], userItemsMap.size());
+                }
+                removedHeight = trimWindow(true);
+            }
+            userListArea.revalidate();
+            userListArea.repaint();
+            shiftScroll(added, removedHeight);
+            // the page may not have filled the view
+            SwingUtilities.invokeLater(this::requestNextPageIfNeeded);
+        });
+    }
+
+    /**
+     * Asks for the page past whichever edge of the window the user has
+     * scrolled near; must be called on the EDT.
+     */
+    private void requestNextPageIfNeeded() {
+        if (pageRequested) {
+            return;
+        }
+        BoundedRangeModel model = scrollBar.getModel();
+        int windowEnd = windowStart + userItemsMap.size();
+        int offset;
+        int limit;
+        if (windowEnd < rosterTotal
+                && model.getValue() + model.getExtent() >= model.getMaximum() - SCROLL_MARGIN) {
+            offset = windowEnd;
+            limit = PAGE_SIZE;
+        } else if (windowStart > 0 && model.getValue() <= SCROLL_MARGIN) {
+            offset = Math.max(0, windowStart - PAGE_SIZE);
+            limit = windowStart - offset;
+        } else {
+            return;
+        }
+        pageRequested = true;
+        try {
+            ClientConsole.INSTANCE.sendRosterPage(offset, limit);
+        } catch (IOException e) {
+            pageRequested = false;
+            LoggerUtil.INSTANCE.severe("Error requesting roster page", e);
+        }
+    }
+
     @Override
     public void onClientDisconnect(long clientId) {
         removeUserListItem(clientId);
@@ -2,6 +2,7 @@ package Project.Common;
 
 public class ConnectionPayload extends Payload {
     private String clientName;
+    private String resumeToken; // CLIENT_ID: issued by the server, CLIENT_CONNECT: presented to resume
 
     /**
      * @return the clientName
@@ -17,6 +18,21 @@ public class ConnectionPayload extends Payload {
         this.clientName = clientName;
     }
 
+    /**
+     * @return the token that lets a dropped connection resume its session, or
+     *         null
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * @param resumeToken the resumeToken to set
+     */
+    public void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
     @Override
     public String toString() {
         return super.toString() +
@@ -0,0 +1,22 @@
+package Project.Common;
+
+/**
+ * PING/PONG payload; the receiver of a PING echoes the sequence back in a PONG
+ * so the sender can match it to the send time and measure round-trip time.
+ */
+public class HeartbeatPayload extends Payload {
+    private long sequence;
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HeartbeatPayload{type=%s, sequence=%d}", getPayloadType(), sequence);
+    }
+}
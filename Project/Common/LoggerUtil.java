@@ -1,5 +1,10 @@
 package Project.Common;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.*;
 
 import Project.Common.LoggerUtil.LoggerConfig;
@@ -11,6 +16,8 @@ public enum LoggerUtil {
         private int fileSizeLimit = 1024 * 1024;
         private int fileCount = 1;
         private String logLocation = "app.log";
+        private boolean async = false;
+        private int bufferSize = 8192;
 
         public int getFileSizeLimit() { return fileSizeLimit; }
         public void setFileSizeLimit(int fileSizeLimit) { this.fileSizeLimit = fileSizeLimit; }
@@ -20,10 +27,30 @@ public enum LoggerUtil {
 
         public String getLogLocation() { return logLocation; }
         public void setLogLocation(String logLocation) { this.logLocation = logLocation; }
+
+        /**
+         * When true, callers only enqueue records and a background writer does the
+         * file and console I/O; if the buffer is full the record is dropped and
+         * counted (see getDroppedCount()). The last 1/8 of the buffer is kept for
+         * WARNING and SEVERE so a flood of info() can't crowd them out.
+         */
+        public boolean isAsync() { return async; }
+        public void setAsync(boolean async) { this.async = async; }
+
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = Math.max(2, bufferSize); }
     }
 
+    private static final int MAX_BATCH = 256;
+
     private Logger logger = Logger.getLogger("IT114Client");
     private boolean configured = false;
+    // async mode
+    private volatile RingBuffer buffer; // null means synchronous
+    private BatchingFileHandler fileHandler;
+    private volatile Thread writer;
+    private volatile boolean writerParked = false;
+    private final AtomicLong dropped = new AtomicLong();
 
     public void setConfig(LoggerConfig config) {
         if (configured) return;
@@ -32,47 +59,251 @@ public enum LoggerUtil {
             for (Handler h : logger.getHandlers()) {
                 logger.removeHandler(h);
             }
-            Handler fh = new FileHandler(
-                    config.getLogLocation(),
-                    config.getFileSizeLimit(),
-                    config.getFileCount(),
-                    true);
-            fh.setFormatter(new SimpleFormatter());
-            logger.addHandler(fh);
+            if (config.isAsync()) {
+                // owned by the writer rather than attached to the logger, otherwise
+                // LogManager's shutdown hook may close it before the last batch is out
+                fileHandler = new BatchingFileHandler(config);
+                fileHandler.setFormatter(new SimpleFormatter());
+                startWriter(config.getBufferSize());
+            } else {
+                Handler fh = new FileHandler(
+                        config.getLogLocation(),
+                        config.getFileSizeLimit(),
+                        config.getFileCount(),
+                        true);
+                fh.setFormatter(new SimpleFormatter());
+                logger.addHandler(fh);
+            }
             configured = true;
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * @return number of records discarded because the async buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
     public void info(String msg) {
-        logger.info(msg);
-        System.out.println(msg);
+        log(Level.INFO, msg, null, false);
     }
     public void fine(String msg) {
-        logger.fine(msg);
-        System.out.println(msg);
+        log(Level.FINE, msg, null, false);
     }
 
     public void warning(String msg, Throwable t) {
-        logger.log(Level.WARNING, msg, t);
-        System.out.println(msg);
-        t.printStackTrace();
+        log(Level.WARNING, msg, t, false);
     }
 
     public void warning(String msg) {
-        logger.warning(msg);
-        System.out.println(msg);
+        log(Level.WARNING, msg, null, false);
     }
 
     public void severe(String msg) {
-        logger.severe(msg);
-        System.err.println(msg);
+        log(Level.SEVERE, msg, null, true);
     }
 
     public void severe(String msg, Throwable t) {
-        logger.log(Level.SEVERE, msg, t);
-        System.err.println(msg);
-        t.printStackTrace();
+        log(Level.SEVERE, msg, t, true);
+    }
+
+    private void log(Level level, String msg, Throwable t, boolean toErr) {
+        RingBuffer current = buffer;
+        if (current == null) {
+            // synchronous (original) behavior
+            if (t != null) {
+                logger.log(level, msg, t);
+            } else {
+                logger.log(level, msg);
+            }
+            (toErr ? System.err : System.out).println(msg);
+            if (t != null) {
+                t.printStackTrace();
+            }
+            return;
+        }
+        LogRecord record = new LogRecord(level, msg);
+        record.setLoggerName(logger.getName());
+        record.setThrown(t);
+        boolean important = level.intValue() >= Level.WARNING.intValue();
+        if (!current.offer(new Entry(record, toErr), important)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void startWriter(int bufferSize) {
+        buffer = new RingBuffer(bufferSize);
+        Thread thread = new Thread(this::drain, "LoggerUtil-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+        // write out whatever is still buffered when the app exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            writeBatch(Integer.MAX_VALUE);
+            fileHandler.close();
+        }));
+    }
+
+    /**
+     * Background writer: takes whatever has accumulated (up to MAX_BATCH),
+     * writes it with one console print per stream and one file flush, then
+     * parks until more arrives
+     */
+    private void drain() {
+        long reportedDrops = 0;
+        while (true) {
+            int written = writeBatch(MAX_BATCH);
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                System.err.println(String.format("LoggerUtil: %s log records dropped (buffer full)",
+                        drops - reportedDrops));
+                reportedDrops = drops;
+            }
+            if (written == 0) {
+                writerParked = true;
+                if (buffer.isEmpty()) {
+                    LockSupport.parkNanos(50_000_000L); // 50ms, producers unpark sooner
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    private synchronized int writeBatch(int max) {
+        StringBuilder out = null;
+        StringBuilder err = null;
+        int count = 0;
+        Entry entry;
+        while (count < max && (entry = buffer.poll()) != null) {
+            count++;
+            LogRecord record = entry.record;
+            if (logger.isLoggable(record.getLevel())) {
+                fileHandler.publish(record);
+            }
+            StringBuilder sb;
+            if (entry.toErr) {
+                sb = err == null ? (err = new StringBuilder()) : err;
+            } else {
+                sb = out == null ? (out = new StringBuilder()) : out;
+            }
+            sb.append(record.getMessage()).append(System.lineSeparator());
+            if (record.getThrown() != null) {
+                StringWriter trace = new StringWriter();
+                record.getThrown().printStackTrace(new PrintWriter(trace));
+                sb.append(trace);
+            }
+        }
+        if (count > 0) {
+            fileHandler.flushBatch();
+            if (out != null) {
+                System.out.print(out);
+                System.out.flush();
+            }
+            if (err != null) {
+                System.err.print(err);
+                System.err.flush();
+            }
+        }
+        return count;
+    }
+
+    private static final class Entry {
+        final LogRecord record;
+        final boolean toErr;
+
+        Entry(LogRecord record, boolean toErr) {
+            this.record = record;
+            this.toErr = toErr;
+        }
+    }
+
+    /**
+     * FileHandler flushes after every record; here the writer flushes once per
+     * batch instead
+     */
+    private static final class BatchingFileHandler extends FileHandler {
+        BatchingFileHandler(LoggerConfig config) throws java.io.IOException {
+            super(config.getLogLocation(), config.getFileSizeLimit(), config.getFileCount(), true);
+        }
+
+        @Override
+        public synchronized void flush() {
+            // deferred to flushBatch()
+        }
+
+        synchronized void flushBatch() {
+            super.flush();
+        }
+    }
+
+    /**
+     * Bounded lock-free multi-producer/single-consumer ring (Vyukov style): each
+     * slot carries a sequence number so producers claim slots with one CAS and
+     * the consumer knows when a slot is fully published
+     */
+    private static final class RingBuffer {
+        private final Entry[] slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final int reserve; // slots only important records may use
+        private final AtomicLong tail = new AtomicLong(); // next slot to claim (producers)
+        private volatile long head = 0; // next slot to read (written by the writer thread only)
+
+        RingBuffer(int requested) {
+            int capacity = Integer.highestOneBit(requested - 1) << 1; // round up to a power of 2
+            slots = new Entry[capacity];
+            sequences = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            reserve = capacity / 8;
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Entry entry, boolean important) {
+            long pos = tail.get();
+            while (true) {
+                if (!important && pos - head >= slots.length - reserve) {
+                    return false;
+                }
+                int index = (int) (pos & mask);
+                long diff = sequences.get(index) - pos;
+                if (diff == 0) {
+                    if (tail.compareAndSet(pos, pos + 1)) {
+                        slots[index] = entry;
+                        sequences.set(index, pos + 1); // publish
+                        return true;
+                    }
+                    pos = tail.get();
+                } else if (diff < 0) {
+                    return false; // full: the writer hasn't freed this slot yet
+                } else {
+                    pos = tail.get(); // another producer took it
+                }
+            }
+        }
+
+        Entry poll() {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return null; // empty or not yet published
+            }
+            Entry entry = slots[index];
+            slots[index] = null;
+            sequences.set(index, head + mask + 1); // free for the next lap
+            head++;
+            return entry;
+        }
+
+        boolean isEmpty() {
+            return sequences.get((int) (head & mask)) != head + 1;
+        }
     }
 }
@@ -0,0 +1,471 @@
+package Project.Common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts Payloads to and from length-prefixed binary frames.
+ * <p>
+ * Frame layout:
+ * </p>
+ *
+ * <pre>
+ * [int32 body length][kind][payload type][fields...]
+ * </pre>
+ * <p>
+ * kind says which Payload subclass follows and payload type is the
+ * PayloadType ordinal (+1, 0 means null). Ids and counts are varints (ids are
+ * zigzag encoded since DEFAULT_CLIENT_ID is negative) and strings are a varint
+ * length (+1, 0 means null) followed by UTF-8 bytes. Each subclass has a
+ * hand-written encoder/decoder below, so there are no class descriptors,
+ * field names or reflection on the wire.
+ * </p>
+ * <p>
+ * Client and Server ship together, so adding a PayloadType or a field only
+ * requires updating both ends of this file.
+ * </p>
+ */
+public final class PayloadCodec {
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 1024 * 1024; // 1MB
+
+    // Payload subclass tags
+    private static final byte KIND_PAYLOAD = 0;
+    private static final byte KIND_CONNECTION = 1;
+    private static final byte KIND_POINTS = 2;
+    private static final byte KIND_READY = 3;
+    private static final byte KIND_ROOM_RESULT = 4;
+    private static final byte KIND_TIMER = 5;
+    private static final byte KIND_HEARTBEAT = 6;
+    private static final byte KIND_PRESENCE = 7;
+    private static final byte KIND_ROSTER = 8;
+
+    private static final PayloadType[] PAYLOAD_TYPES = PayloadType.values();
+    private static final TimerType[] TIMER_TYPES = TimerType.values();
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * Encodes the payload into a complete frame (header included)
+     *
+     * @param payload
+     * @return the frame bytes, ready to be written as-is
+     * @throws IOException if the payload is too large for a frame
+     */
+    public static byte[] encode(Payload payload) throws IOException {
+        Encoder enc = new Encoder();
+        if (payload instanceof ConnectionPayload) {
+            enc.writeByte(KIND_CONNECTION);
+            writeBase(enc, payload);
+            enc.writeString(((ConnectionPayload) payload).getClientName());
+            enc.writeString(((ConnectionPayload) payload).getResumeToken());
+        } else if (payload instanceof PointsPayload) {
+            PointsPayload pp = (PointsPayload) payload;
+            enc.writeByte(KIND_POINTS);
+            writeBase(enc, pp);
+            enc.writeLong(pp.getTargetClientId());
+            enc.writeInt(pp.getPoints());
+        } else if (payload instanceof ReadyPayload) {
+            enc.writeByte(KIND_READY);
+            writeBase(enc, payload);
+            enc.writeByte(((ReadyPayload) payload).isReady() ? 1 : 0);
+        } else if (payload instanceof RoomResultPayload) {
+            RoomResultPayload rrp = (RoomResultPayload) payload;
+            List<String> rooms = rrp.getRooms();
+            enc.writeByte(KIND_ROOM_RESULT);
+            writeBase(enc, payload);
+            enc.writeVarInt(rooms == null ? 0 : rooms.size() + 1);
+            if (rooms != null) {
+                for (String room : rooms) {
+                    enc.writeString(room);
+                }
+            }
+            enc.writeInt(rrp.getOffset());
+            enc.writeInt(rrp.getLimit());
+            enc.writeInt(rrp.getTotal());
+        } else if (payload instanceof TimerPayload) {
+            TimerPayload tp = (TimerPayload) payload;
+            enc.writeByte(KIND_TIMER);
+            writeBase(enc, tp);
+            enc.writeVarInt(tp.getTimerType() == null ? 0 : tp.getTimerType().ordinal() + 1);
+            enc.writeInt(tp.getTime());
+        } else if (payload instanceof HeartbeatPayload) {
+            enc.writeByte(KIND_HEARTBEAT);
+            writeBase(enc, payload);
+            enc.writeLong(((HeartbeatPayload) payload).getSequence());
+        } else if (payload instanceof PresencePayload) {
+            PresencePayload pp = (PresencePayload) payload;
+            enc.writeByte(KIND_PRESENCE);
+            writeBase(enc, pp);
+            writeLongs(enc, pp.getJoinedIds());
+            writeStrings(enc, pp.getJoinedNames());
+            writeLongs(enc, pp.getLeftIds());
+        } else if (payload instanceof RosterPayload) {
+            RosterPayload rp = (RosterPayload) payload;
+            enc.writeByte(KIND_ROSTER);
+            writeBase(enc, rp);
+            writeLongs(enc, rp.getClientIds());
+            writeStrings(enc, rp.getClientNames());
+            enc.writeInt(rp.getOffset());
+            enc.writeInt(rp.getLimit());
+            enc.writeInt(rp.getTotal());
+        } else {
+            enc.writeByte(KIND_PAYLOAD);
+            writeBase(enc, payload);
+        }
+        return enc.toFrame();
+    }
+
+    /**
+     * Decodes the body of a single frame (header excluded)
+     *
+     * @param body
+     * @param offset
+     * @param length
+     * @return the Payload
+     * @throws InvalidObjectException if the frame was readable but didn't hold a
+     *                                valid Payload; the stream itself is still
+     *                                usable
+     */
+    public static Payload decode(byte[] body, int offset, int length) throws IOException {
+        Decoder dec = new Decoder(body, offset, length);
+        byte kind = dec.readByte();
+        Payload payload;
+        switch (kind) {
+            case KIND_PAYLOAD:
+                payload = new Payload();
+                readBase(dec, payload);
+                break;
+            case KIND_CONNECTION: {
+                ConnectionPayload cp = new ConnectionPayload();
+                readBase(dec, cp);
+                cp.setClientName(dec.readString());
+                cp.setResumeToken(dec.readString());
+                payload = cp;
+                break;
+            }
+            case KIND_POINTS: {
+                PointsPayload pp = new PointsPayload();
+                readBase(dec, pp);
+                pp.setTargetClientId(dec.readLong());
+                pp.setPoints(dec.readInt());
+                payload = pp;
+                break;
+            }
+            case KIND_READY: {
+                ReadyPayload rp = new ReadyPayload();
+                readBase(dec, rp);
+                rp.setReady(dec.readByte() != 0);
+                payload = rp;
+                break;
+            }
+            case KIND_ROOM_RESULT: {
+                RoomResultPayload rrp = new RoomResultPayload();
+                readBase(dec, rrp);
+                int count = dec.readVarInt();
+                if (count > 0) {
+                    List<String> rooms = new ArrayList<>(Math.min(count - 1, dec.remaining()));
+                    for (int i = 0; i < count - 1; i++) {
+                        rooms.add(dec.readString());
+                    }
+                    rrp.setRooms(rooms);
+                }
+                rrp.setOffset(dec.readInt());
+                rrp.setLimit(dec.readInt());
+                rrp.setTotal(dec.readInt());
+                payload = rrp;
+                break;
+            }
+            case KIND_TIMER: {
+                TimerPayload tp = new TimerPayload();
+                readBase(dec, tp);
+                int timerType = dec.readVarInt();
+                if (timerType < 0 || timerType > TIMER_TYPES.length) {
+                    throw new InvalidObjectException("Unknown timer type " + timerType);
+                }
+                tp.setTimerType(timerType == 0 ? null : TIMER_TYPES[timerType - 1]);
+                tp.setTime(dec.readInt());
+                payload = tp;
+                break;
+            }
+            case KIND_HEARTBEAT: {
+                HeartbeatPayload hp = new HeartbeatPayload();
+                readBase(dec, hp);
+                hp.setSequence(dec.readLong());
+                payload = hp;
+                break;
+            }
+            case KIND_PRESENCE: {
+                PresencePayload pp = new PresencePayload();
+                readBase(dec, pp);
+                long[] joinedIds = readLongs(dec);
+                pp.setJoined(joinedIds, readStrings(dec, joinedIds.length));
+                pp.setLeftIds(readLongs(dec));
+                payload = pp;
+                break;
+            }
+            case KIND_ROSTER: {
+                RosterPayload rp = new RosterPayload();
+                readBase(dec, rp);
+                long[] clientIds = readLongs(dec);
+                rp.setRoster(clientIds, readStrings(dec, clientIds.length));
+                rp.setOffset(dec.readInt());
+                rp.setLimit(dec.readInt());
+                rp.setTotal(dec.readInt());
+                payload = rp;
+                break;
+            }
+            default:
+                throw new InvalidObjectException("Unknown payload kind " + kind);
+        }
+        if (dec.remaining() != 0) {
+            throw new InvalidObjectException(String.format("%s trailing bytes after payload", dec.remaining()));
+        }
+        return payload;
+    }
+
+    /**
+     * Writes one frame to a blocking stream (caller decides when to flush)
+     */
+    public static void write(DataOutputStream out, Payload payload) throws IOException {
+        out.write(encode(payload));
+    }
+
+    /**
+     * Reads one frame from a blocking stream
+     *
+     * @param in
+     * @return the Payload
+     * @throws IOException
+     */
+    public static Payload read(DataInputStream in) throws IOException {
+        int length = in.readInt(); // blocking
+        checkLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(body, 0, length);
+    }
+
+    /**
+     * Guards against garbage or hostile length headers
+     *
+     * @param length
+     * @throws IOException if the length can't belong to a valid frame
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException(String.format("Invalid frame length %s", length));
+        }
+    }
+
+    /**
+     * Count followed by each (zigzag varint) value
+     */
+    private static void writeLongs(Encoder enc, long[] values) {
+        enc.writeVarInt(values.length);
+        for (long value : values) {
+            enc.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(Decoder dec) throws InvalidObjectException {
+        int count = dec.readVarInt();
+        // every value takes at least one byte, so a bogus count can't allocate more
+        // than the frame could hold
+        if (count < 0 || count > dec.remaining()) {
+            throw new InvalidObjectException("Invalid array length " + count);
+        }
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = dec.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Strings only (no count); used for arrays that parallel a preceding
+     * writeLongs()
+     */
+    private static void writeStrings(Encoder enc, String[] values) {
+        for (String value : values) {
+            enc.writeString(value);
+        }
+    }
+
+    private static String[] readStrings(Decoder dec, int count) throws InvalidObjectException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = dec.readString();
+        }
+        return values;
+    }
+
+    // fields every Payload has
+    private static void writeBase(Encoder enc, Payload payload) {
+        PayloadType type = payload.getPayloadType();
+        enc.writeVarInt(type == null ? 0 : type.ordinal() + 1);
+        enc.writeLong(payload.getClientId());
+        enc.writeString(payload.getMessage());
+    }
+
+    private static void readBase(Decoder dec, Payload payload) throws InvalidObjectException {
+        int type = dec.readVarInt();
+        if (type < 0 || type > PAYLOAD_TYPES.length) {
+            throw new InvalidObjectException("Unknown payload type " + type);
+        }
+        payload.setPayloadType(type == 0 ? null : PAYLOAD_TYPES[type - 1]);
+        payload.setClientId(dec.readLong());
+        payload.setMessage(dec.readString());
+    }
+
+    /**
+     * Growable byte buffer that reserves room for the frame header up front
+     */
+    private static final class Encoder {
+        private byte[] buf = new byte[64];
+        private int pos = HEADER_SIZE;
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, pos + extra)];
+                System.arraycopy(buf, 0, bigger, 0, pos);
+                buf = bigger;
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            writeVarInt((value << 1) ^ (value >> 31)); // zigzag
+        }
+
+        void writeLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63)); // zigzag
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, buf, pos, utf8.length);
+            pos += utf8.length;
+        }
+
+        byte[] toFrame() throws IOException {
+            int length = pos - HEADER_SIZE;
+            checkLength(length);
+            byte[] frame = new byte[pos];
+            System.arraycopy(buf, 0, frame, 0, pos);
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        }
+    }
+
+    /**
+     * Bounds-checked reader over a single frame body
+     */
+    private static final class Decoder {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Decoder(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int remaining() {
+            return end - pos;
+        }
+
+        byte readByte() throws InvalidObjectException {
+            if (pos >= end) {
+                throw new InvalidObjectException("Truncated payload");
+            }
+            return buf[pos++];
+        }
+
+        int readVarInt() throws InvalidObjectException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new InvalidObjectException("Malformed varint");
+        }
+
+        long readVarLong() throws InvalidObjectException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new InvalidObjectException("Malformed varint");
+        }
+
+        int readInt() throws InvalidObjectException {
+            int raw = readVarInt();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readLong() throws InvalidObjectException {
+            long raw = readVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        String readString() throws InvalidObjectException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (length < 0 || length > remaining()) {
+                throw new InvalidObjectException("Truncated string");
+            }
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
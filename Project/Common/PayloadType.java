@@ -28,5 +28,10 @@ public enum PayloadType {
     SYNC_TURN,
     RESET_TURN,
     TIME,
-    POINTS
+    POINTS,
+
+    PING,           // heartbeat request (HeartbeatPayload)
+    PONG,           // heartbeat reply echoing the PING sequence
+    PRESENCE,       // batched room joins/leaves (PresencePayload)
+    ROSTER          // everyone in the room, sent once on join (RosterPayload)
 }
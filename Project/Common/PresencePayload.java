@@ -0,0 +1,52 @@
+package Project.Common;
+
+import java.util.Arrays;
+
+/**
+ * Room presence delta: everyone who joined (ids and names, parallel arrays) and
+ * everyone who left since the previous delta. Applying it is idempotent, so a
+ * client can receive a join it already knows about or a leave for someone it
+ * never saw.
+ */
+public class PresencePayload extends Payload {
+    private static final long[] NO_IDS = new long[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private long[] joinedIds = NO_IDS;
+    private String[] joinedNames = NO_NAMES;
+    private long[] leftIds = NO_IDS;
+
+    public long[] getJoinedIds() {
+        return joinedIds;
+    }
+
+    public String[] getJoinedNames() {
+        return joinedNames;
+    }
+
+    /**
+     * @param joinedIds
+     * @param joinedNames same length as joinedIds
+     */
+    public void setJoined(long[] joinedIds, String[] joinedNames) {
+        if (joinedIds.length != joinedNames.length) {
+            throw new IllegalArgumentException("joinedIds and joinedNames must be the same length");
+        }
+        this.joinedIds = joinedIds;
+        this.joinedNames = joinedNames;
+    }
+
+    public long[] getLeftIds() {
+        return leftIds;
+    }
+
+    public void setLeftIds(long[] leftIds) {
+        this.leftIds = leftIds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PresencePayload{type=%s, joined=%s, names=%s, left=%s}", getPayloadType(),
+                Arrays.toString(joinedIds), Arrays.toString(joinedNames), Arrays.toString(leftIds));
+    }
+}
@@ -2,8 +2,19 @@ package Project.Common;
 
 import java.util.List;
 
+/**
+ * ROOM_LIST request and reply.
+ * <p>
+ * Request: message is the (case-insensitive) name prefix, offset/limit select
+ * the page. Reply: rooms holds that page, offset echoes where it starts and
+ * total is the number of matches across all pages.
+ * </p>
+ */
 public class RoomResultPayload extends Payload {
     private List<String> rooms;
+    private int offset = 0;
+    private int limit = 0; // 0 lets the server pick its default page size
+    private int total = 0;
 
     public List<String> getRooms() {
         return rooms;
@@ -13,12 +24,39 @@ public class RoomResultPayload extends Payload {
         this.rooms = rooms;
     }
 
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
     @Override
     public String toString() {
         return "RoomResultPayload{" +
                 "type=" + getPayloadType() +
                 ", clientId=" + getClientId() +
                 ", rooms=" + rooms +
+                ", offset=" + offset +
+                ", limit=" + limit +
+                ", total=" + total +
                 ", message='" + getMessage() + '\'' +
                 '}';
     }
@@ -0,0 +1,74 @@
+package Project.Common;
+
+import java.util.Arrays;
+
+/**
+ * Members of a room as parallel arrays of ids and names, in one frame instead
+ * of one SYNC_CLIENT per member.
+ * <p>
+ * Sent by the server when a client joins. A page at offset 0 replaces the
+ * client's whole user list. In a large room it's only the first page, and total
+ * says how many members there are. A client asks for more by sending a
+ * RosterPayload with offset and limit set (0 means the server's page size).
+ * </p>
+ */
+public class RosterPayload extends Payload {
+    private long[] clientIds = new long[0];
+    private String[] clientNames = new String[0];
+    private int offset;
+    private int limit;
+    private int total;
+
+    public long[] getClientIds() {
+        return clientIds;
+    }
+
+    public String[] getClientNames() {
+        return clientNames;
+    }
+
+    /**
+     * @param clientIds
+     * @param clientNames same length as clientIds
+     */
+    public void setRoster(long[] clientIds, String[] clientNames) {
+        if (clientIds.length != clientNames.length) {
+            throw new IllegalArgumentException("clientIds and clientNames must be the same length");
+        }
+        this.clientIds = clientIds;
+        this.clientNames = clientNames;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return members in the room (not counting the receiver)
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RosterPayload{type=%s, ids=%s, names=%s, offset=%d, limit=%d, total=%d}",
+                getPayloadType(), Arrays.toString(clientIds), Arrays.toString(clientNames), offset, limit, total);
+    }
+}
@@ -0,0 +1,124 @@
+package Project.Server;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides, right after accept() and before any ServerThread exists, whether a
+ * connection is let in.
+ * <p>
+ * Two limits apply: --max-connections open connections server-wide and a
+ * token bucket per source address (--connect-rate refilled per second, up to
+ * --connect-burst). A shed connection is closed by the accept loop without
+ * allocating anything else. With AdmissionPolicy.PAUSE the accept loop waits
+ * for a free slot instead, so the excess waits in the listen backlog and the
+ * kernel refuses anything past --accept-backlog.
+ * </p>
+ */
+class AdmissionControl {
+    private static final long IDLE_BUCKET_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int maxConnections;
+    private final double rate;
+    private final double burst;
+    private final AtomicInteger open = new AtomicInteger();
+    private final ConcurrentHashMap<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shedFull = new LongAdder();
+    private final LongAdder shedRate = new LongAdder();
+    private final LongAdder paused = new LongAdder(); // times the accept loop waited for a slot
+
+    AdmissionControl(ServerConfig config) {
+        this.maxConnections = config.getMaxConnections();
+        this.rate = config.getConnectRate();
+        this.burst = config.getConnectBurst();
+    }
+
+    /**
+     * Called by the accept loop for every new connection; on true the caller
+     * owns a slot and must release() it when the connection closes
+     *
+     * @param address the peer's address
+     * @return false if the connection should be closed right away
+     */
+    boolean admit(InetAddress address) {
+        if (rate > 0 && address != null) {
+            long now = System.nanoTime();
+            TokenBucket bucket = buckets.computeIfAbsent(address, a -> new TokenBucket(rate, burst, now));
+            if (!bucket.tryTake(now)) {
+                shedRate.increment();
+                return false;
+            }
+        }
+        if (maxConnections > 0 && open.incrementAndGet() > maxConnections) {
+            open.decrementAndGet();
+            shedFull.increment();
+            return false;
+        }
+        if (maxConnections <= 0) {
+            open.incrementAndGet();
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Frees the slot of an admitted connection; call exactly once per admit()
+     * that returned true
+     */
+    void release() {
+        if (open.decrementAndGet() < maxConnections) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * AdmissionPolicy.PAUSE: holds the accept loop while every slot is taken
+     *
+     * @param timeoutMillis
+     * @return true if there's a free slot, false if the wait timed out (the
+     *         caller rechecks whether it should keep accepting)
+     * @throws InterruptedException
+     */
+    boolean awaitCapacity(long timeoutMillis) throws InterruptedException {
+        if (maxConnections <= 0 || open.get() < maxConnections) {
+            return true;
+        }
+        paused.increment();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            long remaining;
+            while (open.get() >= maxConnections && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+        }
+        return open.get() < maxConnections;
+    }
+
+    /**
+     * Forgets addresses that haven't connected recently (their bucket would be
+     * full again anyway)
+     */
+    void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now, IDLE_BUCKET_NANOS));
+    }
+
+    int getOpenConnections() {
+        return open.get();
+    }
+
+    /**
+     * @return open connections and what was admitted or shed since startup
+     */
+    String summary() {
+        return String.format("open=%s/%s admitted=%s shedFull=%s shedRate=%s paused=%s trackedAddresses=%s",
+                open.get(), maxConnections > 0 ? maxConnections : "unlimited", admitted.sum(), shedFull.sum(),
+                shedRate.sum(), paused.sum(), buckets.size());
+    }
+}
@@ -1,23 +1,47 @@
 package Project.Server;
 
+import Project.Common.Constants;
 import Project.Common.User;
+import Project.Common.HeartbeatPayload;
 import Project.Common.Payload;
+import Project.Common.PayloadType;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InvalidObjectException;
 import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Base class the handles the underlying connection between Client and
  * Server-side
+ * <p>
+ * For the blocking transport this is submitted to the Server's connection
+ * executor (platform or virtual threads) rather than being a Thread itself.
+ * </p>
  */
-public abstract class BaseServerThread extends Thread {
+public abstract class BaseServerThread implements Runnable {
 
-    protected boolean isRunning = false; // control variable to stop this thread
-    protected ObjectOutputStream out; // exposed here for send()
-    protected Socket client; // communication directly to "my" client
+    protected volatile boolean isRunning = false; // control variable to stop this thread
+    protected ClientConnection connection; // exposed here for send()
+    protected Socket client; // communication directly to "my" client (blocking transport only)
     private User user = new User();
     protected Room currentRoom;
+    private volatile String remoteNode; // cluster node hosting this client's room, null if it's local
+    private volatile String resumeToken; // lets a new connection take over this session
+    private volatile ParkedSession parked; // set while the connection is gone but the session isn't
+    private final AtomicLong framesSent = new AtomicLong(); // last-delivered marker kept for a parked session
+    private volatile Thread runner; // thread currently executing run(), if any
+    private volatile TimingWheel.Timeout handshakeTimeout;
+    // heartbeat state; the timer fires on the TimingWheel thread, PONGs arrive on
+    // the reading thread
+    private volatile TimingWheel.Timeout heartbeatTimer;
+    private volatile long lastReceivedNanos = System.nanoTime();
+    private long nextPingSequence = 0; // only touched by heartbeat()
+    private volatile long pingSequence = 0; // last PING sent
+    private volatile long pingSentNanos = 0;
+    private volatile long rttNanos = -1; // smoothed round-trip time, -1 until the first PONG
 
     /**
      * Returns the current Room associated with this ServerThread
@@ -44,6 +68,105 @@ public abstract class BaseServerThread extends Thread {
         currentRoom = room;
     }
 
+    /**
+     * Cluster mode: the client is in a room owned by another node (the local
+     * side has no Room for it); null brings it back to this node
+     * 
+     * @param node
+     */
+    protected void setRemoteRoom(String node) {
+        currentRoom = null;
+        remoteNode = node;
+    }
+
+    protected String getRemoteNode() {
+        return remoteNode;
+    }
+
+    protected String getResumeToken() {
+        return resumeToken;
+    }
+
+    protected void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
+    protected boolean isParked() {
+        return parked != null;
+    }
+
+    protected ParkedSession getParkedSession() {
+        return parked;
+    }
+
+    /**
+     * Keeps the session (id, room, game state) after the connection dropped;
+     * frames sent to it are held by the ParkedSession
+     * 
+     * @param session
+     */
+    protected void park(ParkedSession session) {
+        cancelHeartbeat();
+        parked = session;
+        info("Connection lost; session parked");
+    }
+
+    /**
+     * Takes over a parked session on this (new) connection: same id, name and
+     * room. Doesn't trigger onInitialized().
+     * 
+     * @param previous
+     */
+    protected void adopt(BaseServerThread previous) {
+        cancelHandshakeTimeout();
+        user.setClientId(previous.getClientId());
+        user.setClientName(previous.getClientName());
+        framesSent.set(previous.framesSent.get());
+        remoteNode = previous.remoteNode; // a local room is taken over by Room.replaceMember()
+    }
+
+    /**
+     * Takes over a session restored from the off-heap store (see SessionSlab);
+     * the caller puts it back in its room. Doesn't trigger onInitialized().
+     * 
+     * @param clientId
+     * @param clientName
+     * @param framesSent the session's last-delivered marker
+     */
+    protected void restore(long clientId, String clientName, long framesSent) {
+        cancelHandshakeTimeout();
+        user.setClientId(clientId);
+        user.setClientName(clientName);
+        this.framesSent.set(framesSent);
+    }
+
+    /**
+     * @return frames sent to this session so far (across resumes)
+     */
+    protected long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * The parked thread after its session was resumed elsewhere: it stops
+     * without leaving its room (the new thread took its place), and any frame
+     * still addressed to it goes to the new thread via the ParkedSession
+     */
+    protected void retire() {
+        isRunning = false;
+        currentRoom = null;
+        remoteNode = null;
+        info("Session resumed on a new connection");
+    }
+
+    /**
+     * @return true until the server assigned this connection a session (a new
+     *         id or a resumed one)
+     */
+    protected boolean isAwaitingSession() {
+        return getClientId() == Constants.DEFAULT_CLIENT_ID && parked == null;
+    }
+
     /**
      * Returns the status of this ServerThread
      * 
@@ -70,6 +193,7 @@ public abstract class BaseServerThread extends Thread {
      */
     protected void setClientName(String clientName) {
         this.user.setClientName(clientName);
+        cancelHandshakeTimeout();
         onInitialized();
     }
 
@@ -87,7 +211,17 @@ public abstract class BaseServerThread extends Thread {
      * 
      * @param message
      */
-    protected abstract void info(String message);
+    protected void info(String message) {
+        log(ServerLog.Level.INFO, () -> message);
+    }
+
+    /**
+     * Leveled variant of info(); the supplier only runs if the level is enabled
+     * 
+     * @param level
+     * @param message
+     */
+    protected abstract void log(ServerLog.Level level, Supplier<String> message);
 
     /**
      * Triggered when object is fully initialized
@@ -102,7 +236,8 @@ public abstract class BaseServerThread extends Thread {
     protected abstract void processPayload(Payload payload);
 
     /**
-     * Sends the payload over the socket
+     * Queues the payload for this client's writer; never waits on the socket
+     * (unless the BLOCK overflow policy is configured)
      * 
      * @param payload
      * @return true if no errors were encountered
@@ -111,10 +246,36 @@ public abstract class BaseServerThread extends Thread {
         if (!isRunning) {
             return true;
         }
+        SharedFrame frame;
         try {
-            info("Sending to client: " + payload);
-            out.writeObject(payload);
-            out.flush();
+            frame = SharedFrame.encode(payload);
+        } catch (IOException e) {
+            // nothing was sent but the connection itself is fine
+            log(ServerLog.Level.WARN, () -> "Unable to encode payload: " + e.getMessage());
+            return true;
+        }
+        return sendToClient(frame);
+    }
+
+    /**
+     * Queues an already encoded frame; used by broadcasts so the payload is
+     * encoded once no matter how many recipients there are
+     * 
+     * @param frame
+     * @return true if no errors were encountered
+     */
+    protected boolean sendToClient(SharedFrame frame) {
+        ParkedSession session = parked;
+        if (session != null) {
+            return session.hold(frame);
+        }
+        if (!isRunning) {
+            return true;
+        }
+        try {
+            log(ServerLog.Level.TRACE, () -> "Sending to client: " + frame);
+            connection.write(frame.bytes());
+            framesSent.incrementAndGet();
             return true;
         } catch (IOException e) {
             info("Error sending message to client (most likely disconnected)");
@@ -125,6 +286,133 @@ public abstract class BaseServerThread extends Thread {
         }
     }
 
+    /**
+     * See ClientConnection.cork(); used by Rooms around multi-payload events
+     */
+    protected void corkOutput() {
+        ClientConnection current = connection;
+        if (current != null) {
+            current.cork();
+        }
+    }
+
+    protected void uncorkOutput() {
+        ClientConnection current = connection;
+        if (current != null) {
+            current.uncork();
+        }
+    }
+
+    /**
+     * @return smoothed round-trip time in milliseconds or -1 if no PONG has been
+     *         received yet
+     */
+    public double getRttMillis() {
+        long rtt = rttNanos;
+        return rtt < 0 ? -1 : rtt / 1_000_000.0;
+    }
+
+    /**
+     * Matches a PONG against the outstanding PING and folds the sample into the
+     * RTT estimate (same 1/8 gain TCP uses for its smoothed RTT)
+     * 
+     * @param sequence echoed from our PING
+     */
+    protected void onPong(long sequence) {
+        if (sequence != pingSequence) {
+            return; // reply to an older PING, its send time is gone
+        }
+        long sample = Math.max(0, System.nanoTime() - pingSentNanos);
+        long current = rttNanos;
+        rttNanos = current < 0 ? sample : current + (sample - current) / 8;
+    }
+
+    private void startHeartbeat() {
+        ServerConfig config = Server.INSTANCE.getConfig();
+        int period = config.getHeartbeatIntervalSeconds() > 0 ? config.getHeartbeatIntervalSeconds()
+                : config.getIdleTimeoutSeconds();
+        if (period <= 0) {
+            return;
+        }
+        heartbeatTimer = Server.INSTANCE.getTimingWheel().scheduleAtFixedRate(this::heartbeat, period,
+                TimeUnit.SECONDS);
+    }
+
+    private void cancelHeartbeat() {
+        TimingWheel.Timeout timer = heartbeatTimer;
+        if (timer != null) {
+            timer.cancel();
+            heartbeatTimer = null;
+        }
+    }
+
+    /**
+     * Runs on the TimingWheel thread: reaps the client if nothing has been heard
+     * from it within the idle timeout, otherwise sends the next PING
+     */
+    private void heartbeat() {
+        if (!isRunning) {
+            cancelHeartbeat();
+            return;
+        }
+        ServerConfig config = Server.INSTANCE.getConfig();
+        long now = System.nanoTime();
+        long idleLimit = TimeUnit.SECONDS.toNanos(config.getIdleTimeoutSeconds());
+        if (idleLimit > 0 && now - lastReceivedNanos > idleLimit) {
+            cancelHeartbeat();
+            info(String.format("No traffic for %ss. Disconnecting idle client", config.getIdleTimeoutSeconds()));
+            // leaving the Room takes its lock and broadcasts, so keep that off the
+            // timer thread
+            CompletableFuture.runAsync(this::reap);
+            return;
+        }
+        if (config.getHeartbeatIntervalSeconds() > 0) {
+            long sequence = ++nextPingSequence;
+            pingSentNanos = now;
+            pingSequence = sequence;
+            HeartbeatPayload ping = new HeartbeatPayload();
+            ping.setPayloadType(PayloadType.PING);
+            ping.setSequence(sequence);
+            sendPing(ping);
+        }
+    }
+
+    /**
+     * Queues a PING without ever waiting on the TimingWheel thread; it's skipped
+     * if the outbound queue is full (the client is behind anyway, and the next
+     * one tries again) and a dead connection is cleaned up off the timer thread
+     */
+    private void sendPing(HeartbeatPayload ping) {
+        ClientConnection current = connection;
+        if (parked != null || current == null) {
+            return; // nothing to measure, and a PING isn't worth replaying
+        }
+        SharedFrame frame;
+        try {
+            frame = SharedFrame.encode(ping);
+        } catch (IOException e) {
+            log(ServerLog.Level.WARN, () -> "Unable to encode payload: " + e.getMessage());
+            return;
+        }
+        try {
+            if (current.tryWrite(frame.bytes())) {
+                framesSent.incrementAndGet();
+            }
+        } catch (IOException e) {
+            info("Error sending PING to client (most likely disconnected)");
+            CompletableFuture.runAsync(this::cleanup);
+        }
+    }
+
+    private void reap() {
+        Room room = currentRoom;
+        if (room != null) {
+            room.handleDisconnect(this); // tells the Room's members, then disconnect()
+        } else {
+            disconnect();
+        }
+    }
+
     /**
      * Terminates the server-side of the connection
      */
@@ -136,46 +424,119 @@ public abstract class BaseServerThread extends Thread {
         }
         info("Thread being disconnected by server");
         isRunning = false;
-        this.interrupt(); // breaks out of blocking read in the run() method
+        Thread current = runner;
+        if (current != null) {
+            current.interrupt(); // flags the blocking read in the run() method
+        }
         cleanup(); // good practice to ensure data is written out immediately
     }
+    /**
+     * Server shutdown: queues the notice and closes the connection without going
+     * through the Room, so nobody gets a leave announcement. Unlike disconnect()
+     * the reader isn't interrupted (that can close the socket outright); frames
+     * already queued still go out before the socket closes.
+     * 
+     * @param notice
+     */
+    protected void closeForShutdown(SharedFrame notice) {
+        if (!isRunning) {
+            return;
+        }
+        sendToClient(notice);
+        isRunning = false;
+        cleanup();
+    }
+
+    /**
+     * @return frames queued for this client but not written yet
+     */
+    protected int getPendingFrames() {
+        if (parked != null) {
+            return 0; // its connection is gone already
+        }
+        ClientConnection current = connection;
+        return current == null ? 0 : current.getPendingFrames();
+    }
+
+    /**
+     * Called by the transport once the connection can send and receive
+     */
+    protected void onConnectionOpened() {
+        isRunning = true;
+        handshakeTimeout = Server.INSTANCE.getTimingWheel().schedule(() -> {
+            if (getClientName() == null || getClientName().isBlank()) {
+                info("Client name not received. Disconnecting");
+                // cleanup tells the Server and may leave a Room, so keep that
+                // off the timer thread
+                CompletableFuture.runAsync(this::disconnect);
+            }
+        }, 3, TimeUnit.SECONDS);
+        startHeartbeat();
+    }
+
+    private void cancelHandshakeTimeout() {
+        TimingWheel.Timeout timeout = handshakeTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            handshakeTimeout = null;
+        }
+    }
+
+    /**
+     * Called by the transport for every complete Payload read from the client
+     * 
+     * @param fromClient
+     */
+    protected void onPayloadReceived(Payload fromClient) {
+        lastReceivedNanos = System.nanoTime(); // any traffic counts as proof of life
+        log(ServerLog.Level.TRACE, () -> "Received from my client: " + fromClient);
+        processPayload(fromClient);
+    }
+
+    /**
+     * Called by the transport when the client side went away
+     */
+    protected void onConnectionClosed() {
+        if (currentRoom != null) {
+            currentRoom.handleDisconnect(this);
+        }
+        isRunning = false;
+        info("Exited thread loop. Cleaning up connection");
+        cleanup();
+    }
+
 // lsl8 11/03/25 handling each client
+    /**
+     * Blocking transport read loop; the NIO transport never runs this and drives
+     * the on*() callbacks from its selector loop instead
+     */
     @Override
     public void run() {
+        runner = Thread.currentThread();
         info("Thread starting");
-        try (ObjectOutputStream out = new ObjectOutputStream(client.getOutputStream());
-                ObjectInputStream in = new ObjectInputStream(client.getInputStream());) {
-            this.out = out;
-            isRunning = true;
-            new java.util.Timer().schedule(new java.util.TimerTask() {
-                @Override
-                public void run() {
-                    if (getClientName() == null || getClientName().isBlank()) {
-                        info("Client name not received. Disconnecting");
-                        disconnect();
-                    }
-                }
-            }, 3000);
+        try (SocketConnection connection = new SocketConnection(client, Server.INSTANCE.getConfig(),
+                Server.INSTANCE.getWriterExecutor())) {
+            this.connection = connection;
+            onConnectionOpened();
             Payload fromClient;
             /**
              * isRunning is a flag to let us manage the loop exit condition
-             * fromClient (in.readObject()) is a blocking method that waits until data is
-             * received
+             * fromClient (connection.readPayload()) is a blocking method that waits until
+             * a full frame is received
              * - null would likely mean a disconnect so we use a "set and check" logic to
              * alternatively exit the loop
              */
             while (isRunning) {
                 try {
-                    fromClient = (Payload) in.readObject(); // blocking method
+                    fromClient = connection.readPayload(); // blocking method
                     if (fromClient != null) {
-                        info("Received from my client: " + fromClient);
-                        processPayload(fromClient);
+                        onPayloadReceived(fromClient);
                     } else {
                         throw new IOException("Connection interrupted"); // Specific exception for a clean break
                     }
-                } catch (ClassCastException | ClassNotFoundException cce) {
-                    System.err.println("Error reading object as specified type: " + cce.getMessage());
-                    cce.printStackTrace();
+                } catch (InvalidObjectException ioe) {
+                    // frame boundaries are intact so we can skip just this one
+                    System.err.println("Error reading object as specified type: " + ioe.getMessage());
                 } catch (IOException e) {
                     if (Thread.currentThread().isInterrupted()) {
                         info("Thread interrupted during read (likely from the disconnect() method)");
@@ -192,12 +553,8 @@ public abstract class BaseServerThread extends Thread {
             e.printStackTrace();
             info("My Client disconnected");
         } finally {
-            if (currentRoom != null) {
-                currentRoom.handleDisconnect(this);
-            }
-            isRunning = false;
-            info("Exited thread loop. Cleaning up connection");
-            cleanup();
+            onConnectionClosed();
+            runner = null;
         }
     }
 
@@ -206,14 +563,18 @@ public abstract class BaseServerThread extends Thread {
      */
     protected void cleanup() {
         info("ServerThread cleanup() start");
+        cancelHandshakeTimeout();
+        cancelHeartbeat();
         try {
             // close server-side end of connection
             currentRoom = null;
-            out.close();
-            client.close();
+            if (connection != null) {
+                connection.close();
+            }
+            Server.INSTANCE.onClientClosed(getClientId(), this);
             user.reset();
             info("Closed Server-side Socket");
-        } catch (IOException e) {
+        } catch (Exception e) {
             info("Client already closed");
         }
 
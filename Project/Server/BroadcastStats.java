@@ -0,0 +1,30 @@
+package Project.Server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivery latency of server-wide announcements on this node: from the
+ * announcement reaching the node until every local room has queued it for all
+ * of its members.
+ */
+final class BroadcastStats {
+    static final LongAdder announcements = new LongAdder();
+    static final LongAdder totalNanos = new LongAdder();
+    static final AtomicLong maxNanos = new AtomicLong();
+
+    private BroadcastStats() {
+    }
+
+    static void record(long nanos) {
+        announcements.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    static String summary() {
+        long count = announcements.sum();
+        return String.format("announcements=%s avgLatency=%.2fms maxLatency=%.2fms", count,
+                count == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / count, maxNanos.get() / 1_000_000.0);
+    }
+}
@@ -0,0 +1,73 @@
+package Project.Server;
+
+import java.io.IOException;
+
+/**
+ * The transport-specific half of a ServerThread.
+ * <p>
+ * BaseServerThread only deals in encoded frames; how those frames reach the
+ * socket (blocking stream or selector loop) is decided by the implementation.
+ * </p>
+ */
+interface ClientConnection extends AutoCloseable {
+
+    /**
+     * Queues one complete frame (see PayloadCodec) for the client; returns
+     * without waiting for the socket
+     *
+     * @param frame
+     * @throws IOException if the connection is no longer usable or its outbound
+     *                     queue overflowed
+     */
+    void write(byte[] frame) throws IOException;
+
+    /**
+     * Queues the frame only if there's room right now, whatever the overflow
+     * policy: nothing is evicted or waited for. For frames that can be skipped
+     * (heartbeat PINGs) sent from threads that must not stall.
+     *
+     * @param frame
+     * @return false if the outbound queue was full
+     * @throws IOException if the connection is no longer usable
+     */
+    boolean tryWrite(byte[] frame) throws IOException;
+
+    /**
+     * Holds back flushing while a room event is producing several frames for
+     * this client; calls nest and must be paired with uncork(). No-op unless
+     * write batching is enabled.
+     */
+    void cork();
+
+    /**
+     * Ends a cork(); the outermost uncork() lets the batch go out in one flush
+     */
+    void uncork();
+
+    /**
+     * Stops reading from the client for delayMillis, then runs onResume on the
+     * thread that delivers its payloads before reading again (nothing runs if
+     * the connection closed meanwhile). Only called from that thread.
+     *
+     * @param delayMillis
+     * @param onResume
+     */
+    void suspendReads(long delayMillis, Runnable onResume);
+
+    /**
+     * @return frames queued but not yet written to the socket
+     */
+    int getPendingFrames();
+
+    /**
+     * @return a printable remote address for logging
+     */
+    String getRemoteAddress();
+
+    /**
+     * Stops reading, lets already queued frames go out and then closes the
+     * underlying socket; safe to call more than once
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,421 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import Project.Common.Constants;
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+import Project.Common.PayloadType;
+import Project.Common.TextFX.Color;
+import Project.Exception.DuplicateRoomException;
+import Project.Exception.RoomNotFoundException;
+
+/**
+ * This node's part of a multi-node Server.
+ * <p>
+ * Rooms are spread over the nodes by a consistent hash of their name (the
+ * lobby is the exception: every node has its own). A client always stays
+ * connected to the node it reached first (its origin); when it joins a room
+ * owned by another node, the owner hosts a RemoteServerThread for it and the
+ * origin just relays: the client's room payloads go out as FORWARD, whatever
+ * the room sends comes back as DELIVER. Moving between rooms, listing rooms and
+ * heartbeats are still handled by the origin.
+ * </p>
+ * <p>
+ * So that listing rooms covers the whole cluster, every node keeps the names of
+ * the other nodes' rooms in its RoomIndex: owners send ROOM_ADDED/ROOM_REMOVED
+ * as rooms come and go, a node's rooms are dropped when it goes down, and a
+ * node whose rooms aren't known (at startup, or since it went down) is asked
+ * for them with SYNC every RESYNC_SECONDS until that gets through.
+ * </p>
+ */
+class Cluster implements ClusterBus.Handler {
+    private static final int RESYNC_SECONDS = 5;
+
+    private final String nodeId;
+    private final Collection<String> nodeIds;
+    private final ClusterRing ring;
+    private final ClusterBus bus;
+    // clients of other nodes in rooms owned here, by origin:session
+    private final ConcurrentHashMap<String, RemoteServerThread> proxies = new ConcurrentHashMap<>();
+    // other nodes whose room names are in the RoomIndex (or have been asked for)
+    private final Set<String> synced = ConcurrentHashMap.newKeySet();
+    private volatile TimingWheel.Timeout resyncTimer;
+
+    private void info(String message) {
+        ServerLog.log(ServerLog.Level.INFO, Color.BLUE, () -> String.format("Cluster[%s]: %s", nodeId, message));
+    }
+
+    Cluster(String nodeId, Collection<String> nodeIds, ClusterBus bus) {
+        this.nodeId = nodeId;
+        this.nodeIds = nodeIds;
+        this.ring = new ClusterRing(nodeIds);
+        this.bus = bus;
+    }
+
+    void start() throws IOException {
+        bus.start(this);
+        resync();
+        resyncTimer = Server.INSTANCE.getTimingWheel().scheduleAtFixedRate(this::resync, RESYNC_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sends every remote client home to its lobby and stops the bus
+     */
+    void close() {
+        TimingWheel.Timeout timer = resyncTimer;
+        if (timer != null) {
+            timer.cancel();
+        }
+        for (RemoteServerThread proxy : proxies.values()) {
+            returnToOrigin(proxy, Room.LOBBY);
+        }
+        bus.close();
+    }
+
+    /**
+     * @param roomName
+     * @return true if the room lives on this node
+     */
+    boolean isLocal(String roomName) {
+        return Room.LOBBY.equalsIgnoreCase(roomName) || nodeId.equals(ring.owner(roomName));
+    }
+
+    /**
+     * @param type
+     * @return true if a client in a remote room has this payload handled by the
+     *         room's owner rather than by its origin
+     */
+    static boolean isForwarded(PayloadType type) {
+        switch (type) {
+            case CLIENT_CONNECT:
+            case DISCONNECT:
+            case ROOM_CREATE:
+            case ROOM_JOIN:
+            case ROOM_LEAVE:
+            case ROOM_LIST:
+            case PING:
+            case PONG:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Called by Server.joinRoom() before it looks for the room locally
+     *
+     * @param roomName
+     * @param client
+     * @param create   the room has to be created first (Room.handleCreateRoom())
+     * @return true if the move was handled here, false if the room is local and
+     *         the caller should join it as usual
+     */
+    boolean route(String roomName, ServerThread client, boolean create) {
+        if (client instanceof RemoteServerThread) {
+            if (!Room.LOBBY.equalsIgnoreCase(roomName) && isLocal(roomName)) {
+                return false; // moving between rooms of this node
+            }
+            returnToOrigin((RemoteServerThread) client, roomName);
+            return true;
+        }
+        leaveRemote(client);
+        if (isLocal(roomName)) {
+            return false;
+        }
+        Room current = client.getCurrentRoom();
+        if (current != null) {
+            current.removeClient(client);
+        }
+        String owner = ring.owner(roomName);
+        client.setRemoteRoom(owner);
+        if (!bus.send(owner, ClusterMessage.open(nodeId, client.getClientId(), client.getClientName(), roomName,
+                create))) {
+            client.setRemoteRoom(null);
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("Room %s is unavailable", roomName));
+            joinLobby(client);
+        }
+        return true;
+    }
+
+    /**
+     * Relays a payload from a client in a remote room to the room's owner
+     *
+     * @param client
+     * @param payload
+     */
+    void forward(ServerThread client, Payload payload) {
+        String owner = client.getRemoteNode();
+        if (owner == null) {
+            return;
+        }
+        byte[] frame;
+        try {
+            frame = PayloadCodec.encode(payload);
+        } catch (IOException e) {
+            info("Unable to encode payload: " + e.getMessage());
+            return;
+        }
+        if (!bus.send(owner, ClusterMessage.forward(nodeId, client.getClientId(), frame))) {
+            client.setRemoteRoom(null);
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Lost connection to the room's server");
+            joinLobby(client);
+        }
+    }
+
+    /**
+     * Called by Server.onClientClosed(); a local client leaves its remote room,
+     * a remote one is forgotten
+     *
+     * @param client
+     */
+    void onClientClosed(BaseServerThread client) {
+        if (client instanceof RemoteServerThread) {
+            RemoteServerThread proxy = (RemoteServerThread) client;
+            proxies.remove(key(proxy.getOrigin(), proxy.getClientId()), proxy);
+        } else {
+            leaveRemote(client);
+        }
+    }
+
+    boolean deliver(String origin, long session, byte[] frame) {
+        return bus.send(origin, ClusterMessage.deliver(nodeId, session, frame));
+    }
+
+    /**
+     * Hands a server-wide announcement to every other node; each one delivers it
+     * to its own rooms
+     *
+     * @param frame
+     */
+    void announce(byte[] frame) {
+        for (String node : nodeIds) {
+            if (!node.equals(nodeId) && !bus.send(node, ClusterMessage.announce(nodeId, frame))) {
+                info(String.format("Announcement didn't reach node %s", node));
+            }
+        }
+    }
+
+    /**
+     * Called by Server.createRoom() for rooms hosted here
+     *
+     * @param roomName
+     */
+    void roomAdded(String roomName) {
+        toOtherNodes(ClusterMessage.roomAdded(nodeId, roomName));
+    }
+
+    /**
+     * Called by Server.removeRoom()
+     *
+     * @param roomName
+     */
+    void roomRemoved(String roomName) {
+        toOtherNodes(ClusterMessage.roomRemoved(nodeId, roomName));
+    }
+
+    private void toOtherNodes(ClusterMessage message) {
+        for (String node : nodeIds) {
+            if (!node.equals(nodeId)) {
+                bus.send(node, message); // an unreachable node resyncs once it's back
+            }
+        }
+    }
+
+    /**
+     * Runs on the TimingWheel: asks every node whose rooms aren't known for them
+     */
+    private void resync() {
+        for (String node : nodeIds) {
+            if (!node.equals(nodeId) && synced.add(node) && !bus.send(node, ClusterMessage.sync(nodeId))) {
+                synced.remove(node);
+            }
+        }
+    }
+
+    void redirect(String origin, long session, String roomName) {
+        bus.send(origin, ClusterMessage.redirect(nodeId, session, roomName));
+    }
+
+    private void leaveRemote(BaseServerThread client) {
+        String owner = client.getRemoteNode();
+        if (owner != null) {
+            client.setRemoteRoom(null);
+            bus.send(owner, ClusterMessage.close(nodeId, client.getClientId()));
+        }
+    }
+
+    /**
+     * Removes the proxy from its room (it still gets the "You left" frames) and
+     * tells the origin where the client goes next
+     */
+    private void returnToOrigin(RemoteServerThread proxy, String roomName) {
+        Room room = proxy.getCurrentRoom();
+        if (room != null) {
+            room.removeClient(proxy);
+        }
+        proxy.detach();
+        proxies.remove(key(proxy.getOrigin(), proxy.getClientId()), proxy);
+        redirect(proxy.getOrigin(), proxy.getClientId(), roomName);
+        proxy.disconnect();
+    }
+
+    private void joinLobby(ServerThread client) {
+        try {
+            Server.INSTANCE.joinRoom(Room.LOBBY, client);
+        } catch (RoomNotFoundException e) {
+            info("Lobby wasn't found (this shouldn't happen)");
+        }
+    }
+
+    private static String key(String origin, long session) {
+        return origin + ":" + session;
+    }
+
+    @Override
+    public void onMessage(ClusterMessage message) {
+        ServerLog.log(ServerLog.Level.DEBUG, Color.BLUE, () -> String.format("Cluster[%s]: received %s", nodeId, message));
+        try {
+            switch (message.type) {
+                case OPEN:
+                    onOpen(message);
+                    break;
+                case FORWARD:
+                    onForward(message);
+                    break;
+                case CLOSE:
+                    onClose(message);
+                    break;
+                case DELIVER:
+                    onDeliver(message);
+                    break;
+                case REDIRECT:
+                    onRedirect(message);
+                    break;
+                case ANNOUNCE:
+                    Server.INSTANCE.relayToAllRooms(SharedFrame.wrap(message.frame));
+                    break;
+                case ROOM_ADDED:
+                case ROOM_REMOVED:
+                    if (message.from.equals(ring.owner(message.room))) {
+                        Server.INSTANCE.indexRemoteRoom(message.room, message.type == ClusterMessage.Type.ROOM_ADDED);
+                    }
+                    break;
+                case SYNC:
+                    for (String roomName : Server.INSTANCE.getLocalRoomNames()) {
+                        bus.send(message.from, ClusterMessage.roomAdded(nodeId, roomName));
+                    }
+                    break;
+            }
+        } catch (Exception e) {
+            // keep the bus thread alive for the next message
+            info(String.format("Failed to handle %s: %s", message, e));
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Clients in a room on the lost node go back to the lobby; its clients in
+     * rooms here leave them
+     */
+    @Override
+    public void onNodeDown(String node) {
+        info(String.format("Node %s is down", node));
+        synced.remove(node); // its rooms may be gone by the time it's back
+        Server.INSTANCE.unindexRemoteRooms(roomName -> !Room.LOBBY.equalsIgnoreCase(roomName)
+                && node.equals(ring.owner(roomName)));
+        Server.INSTANCE.forEachClient(client -> {
+            if (node.equals(client.getRemoteNode())) {
+                client.setRemoteRoom(null);
+                client.sendMessage(Constants.DEFAULT_CLIENT_ID, "Lost connection to the room's server");
+                joinLobby(client);
+            }
+        });
+        for (RemoteServerThread proxy : proxies.values()) {
+            if (node.equals(proxy.getOrigin()) && proxies.remove(key(node, proxy.getClientId()), proxy)) {
+                closeProxy(proxy);
+            }
+        }
+    }
+
+    private void onOpen(ClusterMessage message) {
+        RemoteServerThread proxy = new RemoteServerThread(new ClusterConnection(this, message.from, message.session),
+                message.from);
+        proxy.setClientId(message.session);
+        proxy.onConnectionOpened();
+        proxy.setClientName(message.clientName);
+        RemoteServerThread previous = proxies.put(key(message.from, message.session), proxy);
+        if (previous != null) {
+            // a CLOSE we never got; the old one can't be the client anymore
+            closeProxy(previous);
+        }
+        if (message.create) {
+            try {
+                Server.INSTANCE.createRoom(message.room);
+            } catch (DuplicateRoomException e) {
+                proxy.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("Room %s already exists", message.room));
+                returnToOrigin(proxy, Room.LOBBY);
+                return;
+            }
+        }
+        try {
+            Server.INSTANCE.joinRoom(message.room, proxy);
+        } catch (RoomNotFoundException e) {
+            proxy.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("Room %s doesn't exist", message.room));
+            returnToOrigin(proxy, Room.LOBBY);
+        }
+    }
+
+    private void onForward(ClusterMessage message) throws IOException {
+        RemoteServerThread proxy = proxies.get(key(message.from, message.session));
+        if (proxy == null) {
+            return; // it left the room since
+        }
+        byte[] frame = message.frame;
+        proxy.onPayloadReceived(
+                PayloadCodec.decode(frame, PayloadCodec.HEADER_SIZE, frame.length - PayloadCodec.HEADER_SIZE));
+    }
+
+    private void onClose(ClusterMessage message) {
+        RemoteServerThread proxy = proxies.remove(key(message.from, message.session));
+        if (proxy != null) {
+            closeProxy(proxy);
+        }
+    }
+
+    private void closeProxy(RemoteServerThread proxy) {
+        proxy.detach();
+        Room room = proxy.getCurrentRoom();
+        if (room != null) {
+            room.handleDisconnect(proxy); // the other members get the leave
+        }
+        proxy.disconnect();
+    }
+
+    private void onDeliver(ClusterMessage message) {
+        ServerThread client = Server.INSTANCE.getClient(message.session);
+        // frames from a room the client already left are dropped
+        if (client != null && message.from.equals(client.getRemoteNode())) {
+            client.sendToClient(SharedFrame.wrap(message.frame));
+        }
+    }
+
+    private void onRedirect(ClusterMessage message) {
+        ServerThread client = Server.INSTANCE.getClient(message.session);
+        if (client == null || !message.from.equals(client.getRemoteNode())) {
+            return;
+        }
+        client.setRemoteRoom(null);
+        try {
+            Server.INSTANCE.joinRoom(message.room, client);
+        } catch (RoomNotFoundException e) {
+            client.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("Room %s doesn't exist", message.room));
+            joinLobby(client);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package Project.Server;
+
+import java.io.IOException;
+
+/**
+ * Node-to-node transport for cluster mode.
+ * <p>
+ * Messages from one node to another must arrive in the order they were sent
+ * (frames for a client are relayed through it). Delivery is best effort: a
+ * node that can't be reached just makes send() return false.
+ * </p>
+ */
+interface ClusterBus extends AutoCloseable {
+
+    interface Handler {
+        /**
+         * Called for every message addressed to this node, one at a time per
+         * sending node
+         *
+         * @param message
+         */
+        void onMessage(ClusterMessage message);
+
+        /**
+         * Called once the connection to a node is lost; anything sent to it
+         * since may be gone
+         *
+         * @param nodeId
+         */
+        void onNodeDown(String nodeId);
+    }
+
+    /**
+     * Starts receiving; the handler runs on the bus's own threads
+     *
+     * @param handler
+     * @throws IOException if this node can't listen
+     */
+    void start(Handler handler) throws IOException;
+
+    /**
+     * @param nodeId
+     * @param message
+     * @return false if the node couldn't be reached
+     */
+    boolean send(String nodeId, ClusterMessage message);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,81 @@
+package Project.Server;
+
+import java.io.IOException;
+
+/**
+ * ClientConnection of a RemoteServerThread: frames are relayed to the client's
+ * node as DELIVER messages instead of being written to a socket.
+ */
+class ClusterConnection implements ClientConnection {
+    private final Cluster cluster;
+    private final String origin;
+    private final long session;
+    private volatile boolean detached = false;
+
+    ClusterConnection(Cluster cluster, String origin, long session) {
+        this.cluster = cluster;
+        this.origin = origin;
+        this.session = session;
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (detached) {
+            return; // the client has moved on; nothing here is meant for it anymore
+        }
+        if (!cluster.deliver(origin, session, frame)) {
+            throw new IOException("Node " + origin + " is unreachable");
+        }
+    }
+
+    @Override
+    public boolean tryWrite(byte[] frame) throws IOException {
+        write(frame); // the bus only ever queues
+        return true;
+    }
+
+    @Override
+    public void cork() {
+        // unused
+    }
+
+    @Override
+    public void uncork() {
+        // unused
+    }
+
+    @Override
+    public void suspendReads(long delayMillis, Runnable onResume) {
+        onResume.run(); // unused: the origin node rate limits the client
+    }
+
+    @Override
+    public int getPendingFrames() {
+        return 0; // the bus owns anything in flight
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.format("cluster:%s/%s", origin, session);
+    }
+
+    /**
+     * Stops relaying; the origin already knows where the client went
+     */
+    void detach() {
+        detached = true;
+    }
+
+    /**
+     * The room dropped the client on its own (not because the origin asked), so
+     * the origin has to put it back in its lobby
+     */
+    @Override
+    public void close() {
+        if (detached) {
+            return;
+        }
+        detached = true;
+        cluster.redirect(origin, session, Room.LOBBY);
+    }
+}
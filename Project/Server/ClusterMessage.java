@@ -0,0 +1,134 @@
+package Project.Server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import Project.Common.PayloadCodec;
+
+/**
+ * One message on the ClusterBus. A session is a client connected to the node
+ * named by from (OPEN, FORWARD, CLOSE) or to the node it's sent to (DELIVER,
+ * REDIRECT); frames are complete PayloadCodec frames, header included.
+ */
+final class ClusterMessage {
+    enum Type {
+        OPEN, // origin -> owner: host this client in room (creating it first if create)
+        FORWARD, // origin -> owner: a payload from the client
+        CLOSE, // origin -> owner: the client left the room or disconnected
+        DELIVER, // owner -> origin: a frame for the client
+        REDIRECT, // owner -> origin: the client has to move to room (e.g. its room closed)
+        ANNOUNCE, // any -> every other node: a server-wide message for all local rooms
+        ROOM_ADDED, // owner -> every other node (or one that asked with SYNC): room exists
+        ROOM_REMOVED, // owner -> every other node: room is gone
+        SYNC // any -> node: send me ROOM_ADDED for each of your rooms
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    final Type type;
+    final String from;
+    final long session;
+    final String room;
+    final String clientName;
+    final boolean create;
+    final byte[] frame;
+
+    private ClusterMessage(Type type, String from, long session, String room, String clientName, boolean create,
+            byte[] frame) {
+        this.type = type;
+        this.from = from;
+        this.session = session;
+        this.room = room;
+        this.clientName = clientName;
+        this.create = create;
+        this.frame = frame;
+    }
+
+    static ClusterMessage open(String from, long session, String clientName, String room, boolean create) {
+        return new ClusterMessage(Type.OPEN, from, session, room, clientName, create, null);
+    }
+
+    static ClusterMessage forward(String from, long session, byte[] frame) {
+        return new ClusterMessage(Type.FORWARD, from, session, null, null, false, frame);
+    }
+
+    static ClusterMessage close(String from, long session) {
+        return new ClusterMessage(Type.CLOSE, from, session, null, null, false, null);
+    }
+
+    static ClusterMessage deliver(String from, long session, byte[] frame) {
+        return new ClusterMessage(Type.DELIVER, from, session, null, null, false, frame);
+    }
+
+    static ClusterMessage redirect(String from, long session, String room) {
+        return new ClusterMessage(Type.REDIRECT, from, session, room, null, false, null);
+    }
+
+    static ClusterMessage announce(String from, byte[] frame) {
+        return new ClusterMessage(Type.ANNOUNCE, from, 0, null, null, false, frame);
+    }
+
+    static ClusterMessage roomAdded(String from, String room) {
+        return new ClusterMessage(Type.ROOM_ADDED, from, 0, room, null, false, null);
+    }
+
+    static ClusterMessage roomRemoved(String from, String room) {
+        return new ClusterMessage(Type.ROOM_REMOVED, from, 0, room, null, false, null);
+    }
+
+    static ClusterMessage sync(String from) {
+        return new ClusterMessage(Type.SYNC, from, 0, null, null, false, null);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeUTF(from);
+        out.writeLong(session);
+        writeNullable(out, room);
+        writeNullable(out, clientName);
+        out.writeBoolean(create);
+        out.writeInt(frame == null ? -1 : frame.length);
+        if (frame != null) {
+            out.write(frame);
+        }
+    }
+
+    static ClusterMessage readFrom(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type >= TYPES.length) {
+            throw new IOException("Unknown cluster message type " + type);
+        }
+        String from = in.readUTF();
+        long session = in.readLong();
+        String room = readNullable(in);
+        String clientName = readNullable(in);
+        boolean create = in.readBoolean();
+        int length = in.readInt();
+        if (length > PayloadCodec.HEADER_SIZE + PayloadCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Cluster frame too large: " + length);
+        }
+        byte[] frame = null;
+        if (length >= 0) {
+            frame = new byte[length];
+            in.readFully(frame);
+        }
+        return new ClusterMessage(TYPES[type], from, session, room, clientName, create, frame);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ClusterMessage{type=%s, from=%s, session=%s, room=%s}", type, from, session, room);
+    }
+}
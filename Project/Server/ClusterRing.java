@@ -0,0 +1,56 @@
+package Project.Server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring deciding which node owns a room.
+ * <p>
+ * Every node is placed on the ring at many points (virtual nodes) so rooms
+ * spread evenly, and adding or removing a node only moves the rooms between it
+ * and its neighbours. Every node builds the same ring from the same node list,
+ * so they all agree on the owner without talking to each other.
+ * </p>
+ */
+class ClusterRing {
+    private static final int VIRTUAL_NODES = 100;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    ClusterRing(Collection<String> nodeIds) {
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(nodeId + "#" + i), nodeId);
+            }
+        }
+    }
+
+    /**
+     * @param roomName case-insensitive
+     * @return the node hosting the room
+     */
+    String owner(String roomName) {
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(roomName.toLowerCase()));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 64-bit FNV-1a with a murmur finalizer (FNV alone clusters similar short
+     * keys like "room1", "room2")
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -6,8 +6,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import Project.Common.Constants;
 import Project.Common.GamePhase;
@@ -19,6 +20,9 @@ import Project.Common.TextFX.Color;
 
 // lsl8 | 11/24/25
 // GameRoom adds round logic, ready check, picks, elimination, points, away, spectators and sessions
+// Note: every handler and the round timer run as commands on the Room's mailbox,
+// so the game state below is only ever touched by one thread at a time and
+// needs no locks
 public class GameRoom extends Room {
 
     // who is ready for the NEXT session
@@ -39,17 +43,31 @@ public class GameRoom extends Room {
     // points tracked across rounds within a session
     private final Map<Long, Integer> points = new HashMap<>();
 
+    // a member's game state as stored for a parked session (see snapshotPlayer())
+    static final int FLAG_READY = 1;
+    static final int FLAG_AWAY = 2;
+    static final int FLAG_SPECTATOR = 4;
+    static final int FLAG_ELIMINATED = 8;
+    // tells a parked player's game apart from a later one (in this or any room)
+    private static final AtomicInteger lastGameSession = new AtomicInteger();
+
     private GamePhase phase = GamePhase.ENDED;
-    private Timer roundTimer;
+    private int gameSession = 0;
+    private TimingWheel.Timeout roundTimer;
+    private int roundNumber = 0; // lets a late timer callback recognize a stale round
 
-    public GameRoom(String name) {
-        super(name);
+    public GameRoom(String name, RoomShards.Shard shard) {
+        super(name, shard);
     }
 
     /**
      * /ready handler
      */
-    public synchronized void handleReady(ServerThread sender) {
+    public void handleReady(ServerThread sender) {
+        enqueue(sender, () -> batched(() -> ready(sender)));
+    }
+
+    private void ready(ServerThread sender) {
         long id = sender.getClientId();
 
         if (eliminated.contains(id)) {
@@ -74,6 +92,9 @@ public class GameRoom extends Room {
 
         int alive = countActivePlayers(); 
         if (alive >= 2 && readySet.size() == alive) {
+            if (phase == GamePhase.ENDED) {
+                gameSession = lastGameSession.incrementAndGet();
+            }
             readySet.clear();
             startRound();
         } else {
@@ -83,7 +104,11 @@ public class GameRoom extends Room {
         }
     }
 //lsl8 | 12/08/25
-    public synchronized void handlePick(ServerThread sender, String arg) {
+    public void handlePick(ServerThread sender, String arg) {
+        enqueue(sender, () -> batched(() -> pick(sender, arg)));
+    }
+
+    private void pick(ServerThread sender, String arg) {
         if (phase != GamePhase.CHOOSING)
             return;
 
@@ -110,15 +135,92 @@ public class GameRoom extends Room {
         }
     }
 
-    public synchronized void handleScoreRequest(ServerThread sender) {
-        syncAllPoints();
+    public void handleScoreRequest(ServerThread sender) {
+        enqueue(sender, this::syncAllPoints);
+    }
+
+    /**
+     * One member's game state, for the parked-session store
+     */
+    static final class PlayerState {
+        final int flags;
+        final int points;
+        final int gameSession;
+
+        PlayerState(int flags, int points, int gameSession) {
+            this.flags = flags;
+            this.points = points;
+            this.gameSession = gameSession;
+        }
+    }
+
+    /**
+     * Reads a (possibly former) member's game state from the mailbox and hands
+     * it to the callback there
+     * 
+     * @param id
+     * @param callback
+     */
+    protected void snapshotPlayer(long id, Consumer<PlayerState> callback) {
+        enqueue(() -> {
+            int flags = (readySet.contains(id) ? FLAG_READY : 0) | (away.contains(id) ? FLAG_AWAY : 0)
+                    | (spectators.contains(id) ? FLAG_SPECTATOR : 0) | (eliminated.contains(id) ? FLAG_ELIMINATED : 0);
+            callback.accept(new PlayerState(flags, points.getOrDefault(id, 0), gameSession));
+        });
+    }
+
+    /**
+     * Puts a restored player's game state back. Spectating carries over as
+     * always; points, elimination and away only if the same game is still on.
+     * 
+     * @param client
+     * @param state
+     */
+    protected void restorePlayer(ServerThread client, PlayerState state) {
+        enqueue(client, () -> {
+            long id = client.getClientId();
+            if ((state.flags & FLAG_SPECTATOR) != 0) {
+                spectators.add(id);
+            }
+            if (phase != GamePhase.ENDED && state.gameSession == gameSession) {
+                if ((state.flags & FLAG_AWAY) != 0) {
+                    away.add(id);
+                }
+                if ((state.flags & FLAG_ELIMINATED) != 0) {
+                    eliminated.add(id);
+                }
+                if (state.points > 0) {
+                    points.putIfAbsent(id, state.points);
+                }
+                syncAllPoints();
+            }
+        });
+    }
+
+    /**
+     * Spectators can read chat but not send it
+     */
+    @Override
+    protected void handleMessage(ServerThread sender, String text) {
+        enqueue(sender, () -> {
+            if (isSpectator(sender.getClientId())) {
+                sender.sendMessage(Constants.DEFAULT_CLIENT_ID,
+                        "Spectators can see chat but cannot send messages.");
+                return;
+            }
+            relay(sender, text);
+        });
     }
 //lsl8 | 12/08/25
     /**
      * Toggle away status for a player.
      * Away players are skipped in the round flow but remain in the game.
      */
-    public synchronized void handleAway(ServerThread sender, boolean isAwayFlag) {
+    public void handleAway(ServerThread sender, boolean isAwayFlag) {
+        enqueue(sender, () -> away(sender, isAwayFlag));
+    }
+
+    private void away(ServerThread sender, boolean isAwayFlag) {
         long id = sender.getClientId();
 
         if (eliminated.contains(id)) {
@@ -150,7 +252,11 @@ public class GameRoom extends Room {
     /**
      * Mark this client as a spectator in this game room.
      */
-    public synchronized void handleSpectatorJoin(ServerThread sender) {
+    public void handleSpectatorJoin(ServerThread sender) {
+        enqueue(sender, () -> spectate(sender));
+    }
+
+    private void spectate(ServerThread sender) {
         long id = sender.getClientId();
         spectators.add(id);
         String name = nameOf(id);
@@ -162,7 +268,11 @@ public class GameRoom extends Room {
     /**
      * Stop spectating and join as an active player again.
      */
-    public synchronized void handleStopSpectate(ServerThread sender) {
+    public void handleStopSpectate(ServerThread sender) {
+        enqueue(sender, () -> stopSpectating(sender));
+    }
+
+    private void stopSpectating(ServerThread sender) {
         long id = sender.getClientId();
         if (!spectators.remove(id)) {
             sender.sendMessage(Constants.DEFAULT_CLIENT_ID,
@@ -180,7 +290,7 @@ public class GameRoom extends Room {
                 "You are no longer a spectator and have joined the game.");
     }
 
-    public boolean isSpectator(long id) {
+    private boolean isSpectator(long id) {
         return spectators.contains(id);
     }
 //lsl8 | 12/08/25 Game Starts
@@ -190,17 +300,17 @@ public class GameRoom extends Room {
 
         if (roundTimer != null)
             roundTimer.cancel();
-        roundTimer = new Timer(true);
-        roundTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                synchronized (GameRoom.this) {
-                    endRound(); // Condition 1: timer expires
-                }
+        final int round = ++roundNumber;
+        // the wheel thread only posts the expiry; it's handled in the mailbox like
+        // any other command
+        roundTimer = Server.INSTANCE.getTimingWheel().schedule(() -> enqueue(() -> {
+            if (round == roundNumber) {
+                batched(this::endRound); // Condition 1: timer expires
             }
-        }, 15000); // 15 second pick window
+        }), 15, TimeUnit.SECONDS); // 15 second pick window
 
-        clientsInRoom.values().forEach(ServerThread::sendRoundStart);
+        broadcast(ServerThread.buildGameEvent(PayloadType.ROUND_START,
+                "Round started! Make your pick with /pick r|p|s|l|k"));
     }
 //lsl8 |12/08/25
     private void endRound() {
@@ -214,7 +324,7 @@ public class GameRoom extends Room {
         }
 
         // eliminate players who didn't pick (but only active players)
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
             if (!eliminated.contains(id)
                     && !away.contains(id)
@@ -280,16 +390,18 @@ public class GameRoom extends Room {
         // tie: no points, no elimination
     }
 
+    // Note: broadcasts encode once and share the frame with every member
+
     private void broadcastNotice(String msg) {
-        clientsInRoom.values().forEach(st -> st.sendPickedNotice(msg));
+        broadcast(ServerThread.buildGameEvent(PayloadType.PICKED_NOTICE, msg));
     }
 
     private void broadcastBattle(String msg) {
-        clientsInRoom.values().forEach(st -> st.sendBattleResult(msg));
+        broadcast(ServerThread.buildGameEvent(PayloadType.BATTLE_RESULT, msg));
     }
 //Lsl8 | 12/08/25
     private void syncAllPoints() {
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
 
             PointsPayload p = new PointsPayload();
@@ -310,8 +422,7 @@ public class GameRoom extends Room {
                 .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
                 .forEach(e -> sb.append(String.format("%s: %d\n", nameOf(e.getKey()), e.getValue())));
 
-        String text = sb.toString();
-        clientsInRoom.values().forEach(st -> st.sendGameOver(text));
+        broadcast(ServerThread.buildGameEvent(PayloadType.GAME_OVER, sb.toString()));
     }
 
     private void resetSession() {
@@ -326,7 +437,7 @@ public class GameRoom extends Room {
     }
 
     private boolean allActivePicked() {
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
             if (!eliminated.contains(id)
                     && !away.contains(id)
@@ -340,7 +451,7 @@ public class GameRoom extends Room {
 //lsl8 | 12/08/25
     private int countActivePlayers() {
         int count = 0;
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
             if (!eliminated.contains(id)
                     && !away.contains(id)
@@ -353,7 +464,7 @@ public class GameRoom extends Room {
 
     private List<Long> aliveIds() {
         List<Long> ids = new ArrayList<>();
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
             if (!eliminated.contains(id)
                     && !away.contains(id)
@@ -365,7 +476,7 @@ public class GameRoom extends Room {
     }
 
     private long remainingPlayerId() {
-        for (ServerThread st : clientsInRoom.values()) {
+        for (ServerThread st : getMembers()) {
             long id = st.getClientId();
             if (!eliminated.contains(id)
                     && !away.contains(id)
@@ -0,0 +1,163 @@
+package Project.Server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import Project.Common.PayloadType;
+
+/**
+ * One client's inbound rate limits: a token bucket per kind of payload that
+ * can make a Room do work for every member (chat relays, game moves, room
+ * changes, score requests). Connection, heartbeat and disconnect payloads are
+ * never limited.
+ * <p>
+ * Only used from the thread that reads the client's payloads, so it's checked
+ * before dispatch without any contention.
+ * </p>
+ */
+class InboundLimiter {
+    /**
+     * Returned by acquire() when the payload shouldn't be dispatched
+     */
+    static final long REJECTED = -1;
+
+    // server-wide totals for the stats reporter
+    private static final LongAdder[] dropped = newCounters(); // per Category
+    private static final LongAdder delayed = new LongAdder();
+    private static final LongAdder notices = new LongAdder();
+
+    enum Category {
+        CHAT("messages"), PICK("game moves"), ROOM("room requests"), POINTS("score requests");
+
+        final String label; // for the throttle notice
+
+        Category(String label) {
+            this.label = label;
+        }
+    }
+
+    private final TokenBucket[] buckets = new TokenBucket[Category.values().length]; // null is unlimited
+    private final boolean[] noticeSent = new boolean[buckets.length];
+    private final ServerConfig.ThrottlePolicy policy;
+    private final long maxDelayNanos;
+
+    InboundLimiter(ServerConfig config) {
+        long now = System.nanoTime();
+        buckets[Category.CHAT.ordinal()] = bucket(config.getChatLimit(), now);
+        buckets[Category.PICK.ordinal()] = bucket(config.getPickLimit(), now);
+        buckets[Category.ROOM.ordinal()] = bucket(config.getRoomLimit(), now);
+        buckets[Category.POINTS.ordinal()] = bucket(config.getPointsLimit(), now);
+        this.policy = config.getThrottlePolicy();
+        this.maxDelayNanos = policy == ServerConfig.ThrottlePolicy.DELAY
+                ? TimeUnit.MILLISECONDS.toNanos(config.getThrottleMaxDelayMillis())
+                : 0;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[Category.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static TokenBucket bucket(ServerConfig.RateLimit limit, long now) {
+        return limit.isLimited() ? new TokenBucket(limit.getRate(), limit.getBurst(), now) : null;
+    }
+
+    /**
+     * @param type
+     * @return the limit the payload counts against or null if it's never
+     *         limited
+     */
+    static Category categoryOf(PayloadType type) {
+        switch (type) {
+            case MESSAGE:
+            case REVERSE:
+                return Category.CHAT;
+            case CHOICE_PICKED:
+            case READY:
+                return Category.PICK;
+            case ROOM_CREATE:
+            case ROOM_JOIN:
+            case ROOM_LEAVE:
+            case ROOM_LIST:
+            case ROSTER:
+                return Category.ROOM;
+            case POINTS_SYNC:
+                return Category.POINTS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Charges one payload of this type against its limit
+     *
+     * @param type
+     * @return 0 to dispatch it now, the millis to hold it for
+     *         (ThrottlePolicy.DELAY; its token is already reserved) or REJECTED
+     */
+    long acquire(PayloadType type) {
+        Category category = categoryOf(type);
+        TokenBucket bucket = category == null ? null : buckets[category.ordinal()];
+        if (bucket == null) {
+            return 0;
+        }
+        long wait = bucket.reserve(System.nanoTime(), maxDelayNanos);
+        if (wait == 0) {
+            noticeSent[category.ordinal()] = false; // the next excess gets a new notice
+            return 0;
+        }
+        if (wait < 0) {
+            dropped[category.ordinal()].increment();
+            return REJECTED;
+        }
+        delayed.increment();
+        return Math.max(1, (wait + 999_999) / 1_000_000); // rounded up
+    }
+
+    /**
+     * ThrottlePolicy.NOTICE: whether a rejected payload of this type should be
+     * answered; true once per run of rejections
+     *
+     * @param type
+     * @return true if the client should be told
+     */
+    boolean shouldNotify(PayloadType type) {
+        Category category = categoryOf(type);
+        if (policy != ServerConfig.ThrottlePolicy.NOTICE || category == null || noticeSent[category.ordinal()]) {
+            return false;
+        }
+        noticeSent[category.ordinal()] = true;
+        notices.increment();
+        return true;
+    }
+
+    /**
+     * Counts a payload dropped without going through acquire()
+     *
+     * @param type a limited type (see categoryOf())
+     */
+    static void onDropped(PayloadType type) {
+        Category category = categoryOf(type);
+        if (category != null) {
+            dropped[category.ordinal()].increment();
+        }
+    }
+
+    /**
+     * @return payloads dropped (per kind), delayed and throttle notices sent,
+     *         across every client
+     */
+    static String summary() {
+        StringBuilder sb = new StringBuilder("dropped[");
+        for (Category category : Category.values()) {
+            if (category.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(category.name().toLowerCase()).append('=').append(dropped[category.ordinal()].sum());
+        }
+        return sb.append(String.format("], delayed=%s, notices=%s", delayed.sum(), notices.sum())).toString();
+    }
+}
@@ -0,0 +1,326 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.PayloadCodec;
+
+/**
+ * A non-blocking client connection owned by one NioEventLoop.
+ * <p>
+ * Incoming bytes are accumulated until a full frame is available and then
+ * handed to the ServerThread. Outgoing frames go into a bounded OutboundQueue
+ * that the loop drains, so a sender never waits on a slow socket.
+ * </p>
+ */
+class NioConnection implements ClientConnection {
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+    private static final int MAX_GATHER = 64; // frames per gathering write
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final String remoteAddress;
+    private final OutboundQueue outbound;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private final boolean writeBatching;
+    private final AtomicInteger corks = new AtomicInteger();
+    // frames handed to the socket in one gathering write; [gatherStart, gatherEnd)
+    // still has bytes left
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private int gatherStart = 0;
+    private int gatherEnd = 0;
+    private SelectionKey key;
+    private ServerThread owner;
+    private volatile boolean closing = false; // no more reads or new frames, finish writing
+    private volatile boolean closed = false;
+    private final Runnable onClosed; // runs once, when the channel closes
+    private boolean readsSuspended = false; // loop thread only
+
+    NioConnection(SocketChannel channel, NioEventLoop loop, ServerConfig config, Runnable onClosed) throws IOException {
+        this.channel = channel;
+        this.loop = loop;
+        this.onClosed = onClosed;
+        this.outbound = new OutboundQueue(config);
+        this.writeBatching = config.isWriteBatching();
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        channel.configureBlocking(false);
+    }
+
+    void setOwner(ServerThread owner) {
+        this.owner = owner;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Called on the loop thread once the channel is registered
+     *
+     * @param key
+     */
+    void onRegistered(SelectionKey key) {
+        this.key = key;
+        owner.onConnectionOpened();
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (closing || closed) {
+            throw new IOException("Connection closed");
+        }
+        // never block the selector loop itself, it's the one that drains the queue
+        if (!outbound.offer(frame, !loop.inLoop())) {
+            throw new IOException(String.format("Outbound queue full (%s frames)", outbound.size()));
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public boolean tryWrite(byte[] frame) throws IOException {
+        if (closing || closed) {
+            throw new IOException("Connection closed");
+        }
+        if (!outbound.offerIfRoom(frame)) {
+            return false;
+        }
+        scheduleFlush();
+        return true;
+    }
+
+    @Override
+    public void cork() {
+        if (writeBatching) {
+            corks.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void uncork() {
+        if (writeBatching && corks.decrementAndGet() == 0) {
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        // only one flush task needs to be queued no matter how many frames pile up
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flushPending);
+        }
+    }
+
+    void onWritable() {
+        flushPending();
+    }
+
+    /**
+     * Writes queued frames; with write batching up to MAX_GATHER frames go out
+     * in a single gathering write, otherwise one write per frame
+     */
+    private void flushPending() {
+        flushScheduled.set(false);
+        if (closed || key == null) {
+            return;
+        }
+        if (corks.get() > 0 && !closing) {
+            return; // a room event is still producing, its uncork() flushes
+        }
+        boolean wrote = false;
+        try {
+            while (true) {
+                if (gatherStart == gatherEnd) {
+                    gatherStart = 0;
+                    gatherEnd = 0;
+                    int limit = writeBatching ? gather.length : 1;
+                    byte[] frame;
+                    while (gatherEnd < limit && (frame = outbound.poll()) != null) {
+                        gather[gatherEnd++] = ByteBuffer.wrap(frame);
+                        TransportStats.framesWritten.increment();
+                        TransportStats.bytesWritten.add(frame.length);
+                    }
+                    if (gatherEnd == 0) {
+                        break;
+                    }
+                }
+                channel.write(gather, gatherStart, gatherEnd - gatherStart);
+                TransportStats.socketWrites.increment();
+                wrote = true;
+                while (gatherStart < gatherEnd && !gather[gatherStart].hasRemaining()) {
+                    gather[gatherStart++] = null;
+                }
+                if (gatherStart < gatherEnd) {
+                    // socket buffer is full, wait for the selector to tell us it drained
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    TransportStats.flushes.increment();
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (wrote) {
+                TransportStats.flushes.increment();
+            }
+            if (closing) {
+                closeChannel(); // everything queued before close() went out
+            }
+        } catch (IOException e) {
+            onClosedByPeer();
+        }
+    }
+
+    /**
+     * Reads what's available and dispatches every complete frame
+     */
+    void onReadable() {
+        if (closing) {
+            return;
+        }
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            onClosedByPeer();
+            return;
+        }
+        readBuffer.flip();
+        while (readBuffer.remaining() >= PayloadCodec.HEADER_SIZE) {
+            int length = readBuffer.getInt(readBuffer.position());
+            try {
+                PayloadCodec.checkLength(length);
+            } catch (IOException e) {
+                owner.info(e.getMessage());
+                onClosedByPeer();
+                return;
+            }
+            int frameSize = PayloadCodec.HEADER_SIZE + length;
+            if (readBuffer.remaining() < frameSize) {
+                if (readBuffer.capacity() < frameSize) {
+                    // frame is larger than the buffer, grow it and keep what we have
+                    ByteBuffer bigger = ByteBuffer.allocate(frameSize);
+                    bigger.put(readBuffer);
+                    readBuffer = bigger;
+                    return;
+                }
+                break;
+            }
+            readBuffer.position(readBuffer.position() + PayloadCodec.HEADER_SIZE);
+            byte[] body = new byte[length];
+            readBuffer.get(body);
+            try {
+                owner.onPayloadReceived(PayloadCodec.decode(body, 0, length));
+            } catch (InvalidObjectException e) {
+                owner.log(ServerLog.Level.WARN, () -> "Skipping unreadable frame: " + e.getMessage());
+            } catch (IOException e) {
+                owner.info("Error decoding frame: " + e.getMessage());
+                onClosedByPeer();
+                return;
+            }
+            if (closing || closed) {
+                return;
+            }
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * The client went away (or sent garbage); closes the channel and lets the
+     * ServerThread run its normal disconnect logic
+     */
+    void onClosedByPeer() {
+        if (closed) {
+            return;
+        }
+        closeChannel();
+        owner.onConnectionClosed();
+    }
+
+    /**
+     * Takes OP_READ away for the delay; frames already in the read buffer are
+     * still handed to the owner (it holds them back itself)
+     */
+    @Override
+    public void suspendReads(long delayMillis, Runnable onResume) {
+        readsSuspended = true;
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        Server.INSTANCE.getTimingWheel().schedule(() -> loop.execute(() -> {
+            readsSuspended = false;
+            if (closing || closed) {
+                return;
+            }
+            onResume.run();
+            // onResume may have suspended again
+            if (!readsSuspended && !closing && !closed && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getPendingFrames() {
+        return outbound.size();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void close() {
+        if (closing || closed) {
+            return;
+        }
+        closing = true;
+        loop.execute(() -> {
+            if (closed) {
+                return;
+            }
+            if (key == null || !key.isValid()) {
+                closeChannel();
+                return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            flushPending(); // closes the channel once the queue is empty
+        });
+    }
+
+    /**
+     * Closes immediately, dropping anything still queued (loop thread only)
+     */
+    void forceClose() {
+        closing = true;
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        boolean wasOpen = !closed;
+        closed = true;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+        outbound.clear();
+        Arrays.fill(gather, null);
+        gatherStart = 0;
+        gatherEnd = 0;
+        if (wasOpen) {
+            onClosed.run();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import Project.Common.TextFX.Color;
+
+/**
+ * A single Selector thread that services the reads and writes of many
+ * NioConnections.
+ * <p>
+ * Other threads never touch the Selector directly; they hand work to the loop
+ * with execute() and the loop runs it between selects.
+ * </p>
+ */
+class NioEventLoop implements Runnable {
+    private final String name;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean isRunning = false;
+
+    private void info(String message) {
+        ServerLog.log(ServerLog.Level.INFO, Color.GREEN, () -> String.format("%s: %s", name, message));
+    }
+
+    NioEventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        isRunning = true;
+        thread.start();
+    }
+
+    void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    /**
+     * @return true if the calling thread is this loop's thread
+     */
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the task on the loop thread (immediately if already on it)
+     *
+     * @param task
+     */
+    void execute(Runnable task) {
+        if (inLoop()) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers the connection for reads; the owning ServerThread is told the
+     * connection is open once the registration has happened on the loop
+     *
+     * @param connection
+     */
+    void register(NioConnection connection) {
+        execute(() -> {
+            try {
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.onRegistered(key);
+            } catch (IOException e) {
+                info("Failed to register channel " + connection.getRemoteAddress());
+                connection.close();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        info("Loop starting");
+        while (isRunning) {
+            try {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (Exception e) {
+                        // one misbehaving connection must not take the whole loop down
+                        info("Error servicing " + connection.getRemoteAddress());
+                        e.printStackTrace();
+                        connection.onClosedByPeer();
+                    }
+                }
+            } catch (IOException e) {
+                info("Selector error");
+                e.printStackTrace();
+            }
+        }
+        closeAll();
+        info("Loop stopped");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                info("Task failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).forceClose();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore, shutting down
+        }
+    }
+}
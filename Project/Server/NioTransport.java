@@ -0,0 +1,59 @@
+package Project.Server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * Alternative to one blocking thread per client: a small, fixed number of
+ * NioEventLoops share every connection, so idle clients cost a buffer and a
+ * SelectionKey rather than a thread.
+ */
+class NioTransport {
+    private final NioEventLoop[] loops;
+    private final Consumer<ServerThread> onInitializationComplete;
+    private final ServerConfig config;
+    private int nextLoop = 0;
+
+    NioTransport(ServerConfig config, Consumer<ServerThread> onInitializationComplete) throws IOException {
+        this.config = config;
+        this.loops = new NioEventLoop[Math.max(1, config.getNioLoops())];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("NioLoop-" + i);
+        }
+        this.onInitializationComplete = onInitializationComplete;
+    }
+
+    void start() {
+        for (NioEventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    int getLoopCount() {
+        return loops.length;
+    }
+
+    /**
+     * Wraps a freshly accepted channel in a ServerThread and hands it to the next
+     * loop (round-robin). Only called from the accept loop.
+     *
+     * @param channel
+     * @param onClosed runs once the channel is closed
+     * @throws IOException
+     */
+    void register(SocketChannel channel, Runnable onClosed) throws IOException {
+        NioEventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        NioConnection connection = new NioConnection(channel, loop, config, onClosed);
+        ServerThread serverThread = new ServerThread(connection, onInitializationComplete);
+        connection.setOwner(serverThread);
+        loop.register(connection);
+    }
+
+    void shutdown() {
+        for (NioEventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+}
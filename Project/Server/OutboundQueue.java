@@ -0,0 +1,109 @@
+package Project.Server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import Project.Server.ServerConfig.OverflowPolicy;
+
+/**
+ * Bounded queue of encoded frames waiting to be written to one client.
+ * <p>
+ * Senders (room broadcasts, game events) only ever enqueue here; the
+ * connection's writer is the only one that touches the socket. What happens
+ * when a slow client lets the queue fill up is decided by the OverflowPolicy.
+ * </p>
+ */
+class OutboundQueue {
+    private final ArrayBlockingQueue<byte[]> frames;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMillis;
+
+    OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMillis) {
+        this.frames = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    OutboundQueue(ServerConfig config) {
+        this(config.getOutboundCapacity(), config.getOverflowPolicy(), config.getOverflowTimeoutMillis());
+    }
+
+    /**
+     * Adds a frame for the writer
+     *
+     * @param frame
+     * @param mayBlock false if the caller is the writer itself (e.g. a selector
+     *                 loop) and waiting would deadlock
+     * @return false if the queue overflowed and the client should be
+     *         disconnected
+     */
+    boolean offer(byte[] frame, boolean mayBlock) {
+        if (frames.offer(frame)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                // make room by discarding the stalest frame; retry since the writer may
+                // have raced us
+                while (!frames.offer(frame)) {
+                    if (frames.poll() != null) {
+                        TransportStats.framesDropped.increment();
+                    }
+                }
+                return true;
+            case BLOCK:
+                if (!mayBlock) {
+                    return false;
+                }
+                try {
+                    return frames.offer(frame, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case DISCONNECT:
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Adds a frame only if there's room, whatever the policy; for markers and
+     * skippable frames that must never push out (or wait for) a real frame
+     *
+     * @param frame
+     * @return false if the queue was full
+     */
+    boolean offerIfRoom(byte[] frame) {
+        return frames.offer(frame);
+    }
+
+    /**
+     * Blocks until a frame is available
+     */
+    byte[] take() throws InterruptedException {
+        return frames.take();
+    }
+
+    /**
+     * @return the next frame or null if empty
+     */
+    byte[] poll() {
+        return frames.poll();
+    }
+
+    /**
+     * @return the next frame or null if none arrived within the timeout
+     */
+    byte[] poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return frames.poll(timeout, unit);
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    void clear() {
+        frames.clear();
+    }
+}
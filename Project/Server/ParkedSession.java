@@ -0,0 +1,105 @@
+package Project.Server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Output side of a client whose connection dropped while it's parked (see
+ * Server.parkSession()).
+ * <p>
+ * The client stays a member of its room, so everything the room sends it is
+ * held here, in order, up to a fixed number of frames. When a new connection
+ * resumes the session the held frames are replayed to it and anything still
+ * arriving for the old thread is forwarded; if too much was missed the held
+ * frames are dropped and the room sends a fresh roster instead.
+ * </p>
+ */
+final class ParkedSession {
+    // server-wide totals for the stats reporter
+    private static final LongAdder parked = new LongAdder();
+    private static final LongAdder resumed = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+    private static final LongAdder replayedFrames = new LongAdder();
+
+    private final ArrayDeque<SharedFrame> missed = new ArrayDeque<>();
+    private final int capacity;
+    private boolean overflowed = false;
+    private BaseServerThread resumedBy; // set once the session has been taken over
+    private volatile TimingWheel.Timeout expiry;
+
+    ParkedSession(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        parked.increment();
+    }
+
+    void setExpiry(TimingWheel.Timeout expiry) {
+        this.expiry = expiry;
+    }
+
+    /**
+     * Holds a frame for the parked client, or hands it to the thread that
+     * resumed the session
+     *
+     * @param frame
+     * @return true (a parked client can't fail a send)
+     */
+    synchronized boolean hold(SharedFrame frame) {
+        if (resumedBy != null) {
+            return resumedBy.sendToClient(frame);
+        }
+        if (overflowed) {
+            return true;
+        }
+        if (missed.size() >= capacity) {
+            overflowed = true; // the client gets a full resync instead
+            missed.clear();
+            return true;
+        }
+        missed.add(frame);
+        return true;
+    }
+
+    /**
+     * Replays the held frames to the resuming thread and forwards everything
+     * after that
+     *
+     * @param next
+     * @return false if frames were lost and the client needs a full resync
+     */
+    synchronized boolean resume(BaseServerThread next) {
+        cancelExpiry();
+        resumed.increment();
+        resumedBy = next;
+        replayedFrames.add(missed.size());
+        SharedFrame frame;
+        while ((frame = missed.poll()) != null) {
+            next.sendToClient(frame);
+        }
+        return !overflowed;
+    }
+
+    /**
+     * The grace period ran out; the client is disconnected for real
+     */
+    synchronized void expire() {
+        expired.increment();
+        missed.clear();
+    }
+
+    void cancelExpiry() {
+        TimingWheel.Timeout timeout = expiry;
+        if (timeout != null) {
+            timeout.cancel();
+            expiry = null;
+        }
+    }
+
+    /**
+     * @return sessions parked, resumed and expired, and frames replayed, since
+     *         startup
+     */
+    static String summary() {
+        return String.format("parked=%s resumed=%s expired=%s replayedFrames=%s", parked.sum(), resumed.sum(),
+                expired.sum(), replayedFrames.sum());
+    }
+}
@@ -0,0 +1,115 @@
+package Project.Server;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import Project.Common.Constants;
+import Project.Common.PayloadType;
+import Project.Common.PresencePayload;
+
+/**
+ * A Room's pending joins and leaves, collected over a short window and sent to
+ * the other members as one PresencePayload.
+ * <p>
+ * Only the net change per client is kept: join then leave within one window
+ * sends just the leave, and leave then join sends just the join. Either way
+ * every member ends up with the right roster, since clients apply deltas
+ * idempotently.
+ * </p>
+ */
+class PresenceBuffer {
+    // server-wide totals for the stats reporter
+    private static final LongAdder deltasSent = new LongAdder();
+    private static final LongAdder notificationsSaved = new LongAdder();
+
+    private final Map<Long, String> joined = new LinkedHashMap<>();
+    private final Set<Long> left = new LinkedHashSet<>();
+    // payloads the buffered changes would have cost if sent one by one
+    private long individual = 0;
+    private boolean scheduled = false;
+
+    /**
+     * @param clientId
+     * @param clientName
+     * @param recipients members other than the one joining
+     * @return true if this is the first change since the last drain (the caller
+     *         schedules the flush)
+     */
+    synchronized boolean join(long clientId, String clientName, int recipients) {
+        left.remove(clientId);
+        joined.put(clientId, clientName);
+        return pending(recipients);
+    }
+
+    /**
+     * @param clientId
+     * @param recipients members other than the one leaving
+     * @return true if this is the first change since the last drain (the caller
+     *         schedules the flush)
+     */
+    synchronized boolean leave(long clientId, int recipients) {
+        joined.remove(clientId);
+        left.add(clientId);
+        return pending(recipients);
+    }
+
+    private boolean pending(int recipients) {
+        // previously a status payload plus a chat message per recipient
+        individual += 2L * recipients;
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Takes everything buffered so far
+     *
+     * @param recipients how many members the delta will be sent to
+     * @return the delta or null if nothing changed
+     */
+    synchronized PresencePayload drain(int recipients) {
+        scheduled = false;
+        if (joined.isEmpty() && left.isEmpty()) {
+            return null;
+        }
+        long[] joinedIds = new long[joined.size()];
+        String[] joinedNames = new String[joinedIds.length];
+        int i = 0;
+        for (Map.Entry<Long, String> entry : joined.entrySet()) {
+            joinedIds[i] = entry.getKey();
+            joinedNames[i] = entry.getValue();
+            i++;
+        }
+        long[] leftIds = new long[left.size()];
+        i = 0;
+        for (long clientId : left) {
+            leftIds[i++] = clientId;
+        }
+        joined.clear();
+        left.clear();
+
+        deltasSent.add(recipients);
+        notificationsSaved.add(Math.max(0, individual - recipients));
+        individual = 0;
+
+        PresencePayload payload = new PresencePayload();
+        payload.setPayloadType(PayloadType.PRESENCE);
+        payload.setClientId(Constants.DEFAULT_CLIENT_ID);
+        payload.setJoined(joinedIds, joinedNames);
+        payload.setLeftIds(leftIds);
+        return payload;
+    }
+
+    /**
+     * @return delta payloads sent and individual join/leave notifications they
+     *         replaced, across every room
+     */
+    static String summary() {
+        return String.format("deltas=%s, notificationsSaved=%s", deltasSent.sum(), notificationsSaved.sum());
+    }
+}
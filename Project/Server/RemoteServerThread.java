@@ -0,0 +1,34 @@
+package Project.Server;
+
+/**
+ * Stand-in for a client connected to another node while it's in a room this
+ * node owns. Rooms treat it like any member; its payloads arrive as FORWARD
+ * messages and everything sent to it goes back through the ClusterConnection.
+ * <p>
+ * Handshake, heartbeats and the session directory stay with the origin node,
+ * which still holds the real connection.
+ * </p>
+ */
+class RemoteServerThread extends ServerThread {
+    private final String origin;
+
+    RemoteServerThread(ClusterConnection connection, String origin) {
+        super(connection, client -> {
+            // never registered locally
+        }, null); // the origin node already applied the client's rate limits
+        this.origin = origin;
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    void detach() {
+        ((ClusterConnection) connection).detach();
+    }
+
+    @Override
+    protected void onConnectionOpened() {
+        isRunning = true;
+    }
+}
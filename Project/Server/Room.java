@@ -1,9 +1,18 @@
 package Project.Server;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import Project.Common.Payload;
+import Project.Common.PresencePayload;
 import Project.Common.RoomAction;
 import Project.Common.Constants;
-import Project.Common.TextFX;
 import Project.Common.TextFX.Color;
 import Project.Exception.DuplicateRoomException;
 import Project.Exception.RoomNotFoundException;
@@ -13,91 +22,476 @@ import Project.Server.ServerThread;
 public class Room implements AutoCloseable {
     private final String name;// unique name of the Room
     private volatile boolean isRunning = false;
+    // lookup by id; membership changes go through addMember()/removeMember() so
+    // the snapshot below stays in sync
     protected final ConcurrentHashMap<Long, ServerThread> clientsInRoom = new ConcurrentHashMap<Long, ServerThread>();
+    // immutable copy of the members, replaced (never modified) on join/leave so
+    // broadcasts can iterate it without holding any lock
+    private volatile ServerThread[] members = NO_MEMBERS;
+    // serializes joins/leaves (and their own announcements, so two clients
+    // joining at once each see the other exactly once); chat and game
+    // broadcasts never take it
+    private final Object membershipLock = new Object();
+    private boolean closing = false; // guarded by membershipLock
+    // chat and game commands run here, one at a time, instead of on the sender's
+    // reader thread
+    private final RoomMailbox mailbox;
+    private final RoomShards.Shard shard;
+    // joins/leaves waiting to go out to the other members as one delta
+    private final PresenceBuffer presence = new PresenceBuffer();
+    // members that get presence deltas: those that received the full roster on
+    // join, plus (in a large room) those that asked for more pages
+    private final Set<Long> rosterSubscribers = ConcurrentHashMap.newKeySet();
+
+    private static final ServerThread[] NO_MEMBERS = new ServerThread[0];
+    private static final int ROSTER_PAGE = 50;
+    private static final int MAX_ROSTER_PAGE = 200;
 
     public final static String LOBBY = "lobby";
 
     private void info(String message) {
-        System.out.println(TextFX.colorize(String.format("Room[%s]: %s", name, message), Color.PURPLE));
+        log(ServerLog.Level.INFO, () -> message);
+    }
+
+    private void log(ServerLog.Level level, Supplier<String> message) {
+        ServerLog.log(level, Color.PURPLE, () -> String.format("Room[%s]: %s", name, message.get()));
     }
 
-    public Room(String name) {
+    /**
+     * @param name
+     * @param shard the loop this room's mailbox runs on (see Server.createRoom())
+     */
+    public Room(String name, RoomShards.Shard shard) {
         this.name = name;
+        this.shard = shard;
+        this.mailbox = new RoomMailbox(name, shard);
         isRunning = true;
         info("Created");
     }
 
+    /**
+     * Queues a command for this Room's mailbox (timers and other server-side
+     * events)
+     * 
+     * @param command
+     */
+    protected void enqueue(Runnable command) {
+        mailbox.execute(command);
+    }
+
+    /**
+     * Queues a command on behalf of a client; it's skipped if the client
+     * disconnected or moved to another room (possibly on another shard) by the
+     * time the mailbox gets to it, so a room never acts for a non-member
+     * 
+     * @param sender
+     * @param command
+     */
+    protected void enqueue(ServerThread sender, Runnable command) {
+        mailbox.execute(() -> {
+            if (isRunning && sender.isRunning() && clientsInRoom.get(sender.getClientId()) == sender) {
+                command.run();
+            }
+        });
+    }
+
     public String getName() {
         return this.name;
     }
+
+    protected RoomShards.Shard getShard() {
+        return shard;
+    }
+    /**
+     * @return the current members; the array is never modified, a join or leave
+     *         publishes a new one
+     */
+    protected ServerThread[] getMembers() {
+        return members;
+    }
+
+    private boolean addMember(ServerThread client) {
+        synchronized (membershipLock) {
+            if (clientsInRoom.putIfAbsent(client.getClientId(), client) != null) {
+                return false;
+            }
+            ServerThread[] current = members;
+            ServerThread[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = client;
+            members = next;
+            return true;
+        }
+    }
+
+    /**
+     * Puts a resumed session's new thread in the old one's place; the other
+     * members don't notice anything
+     * 
+     * @param previous the parked thread
+     * @param next
+     * @return false if previous isn't a member (anymore)
+     */
+    protected boolean replaceMember(ServerThread previous, ServerThread next) {
+        synchronized (membershipLock) {
+            if (!isRunning || clientsInRoom.get(previous.getClientId()) != previous) {
+                return false;
+            }
+            clientsInRoom.put(next.getClientId(), next);
+            ServerThread[] current = members;
+            ServerThread[] replaced = current.clone();
+            for (int i = 0; i < replaced.length; i++) {
+                if (replaced[i] == previous) {
+                    replaced[i] = next;
+                }
+            }
+            members = replaced;
+            next.setCurrentRoom(this);
+            return true;
+        }
+    }
+
+    /**
+     * Sends a resumed client the roster again after it missed more than could
+     * be replayed
+     * 
+     * @param client
+     */
+    protected void resync(ServerThread client) {
+        synchronized (membershipLock) {
+            if (clientsInRoom.get(client.getClientId()) == client) {
+                syncExistingClients(client);
+            }
+        }
+    }
+
+    /**
+     * Found by identity, not just by the client's current id: a failed send
+     * runs cleanup(), which resets the User before the room gets to remove it
+     * 
+     * @param client
+     * @return the id it was a member under or null if it isn't a member
+     */
+    private Long removeMember(ServerThread client) {
+        synchronized (membershipLock) {
+            Long clientId = client.getClientId();
+            if (clientsInRoom.get(clientId) != client) {
+                clientId = null;
+                for (Map.Entry<Long, ServerThread> entry : clientsInRoom.entrySet()) {
+                    if (entry.getValue() == client) {
+                        clientId = entry.getKey();
+                        break;
+                    }
+                }
+                if (clientId == null) {
+                    return null;
+                }
+            }
+            clientsInRoom.remove(clientId, client);
+            rosterSubscribers.remove(clientId);
+            ServerThread[] current = members;
+            ServerThread[] next = new ServerThread[Math.max(0, current.length - 1)];
+            int i = 0;
+            for (ServerThread member : current) {
+                if (member != client && i < next.length) {
+                    next[i++] = member;
+                }
+            }
+            members = i == next.length ? next : Arrays.copyOf(next, i);
+            return clientId;
+        }
+    }
+
 //lsl8 11/24/25 
-    protected synchronized void addClient(ServerThread client) {
+    protected void addClient(ServerThread client) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
-        if (clientsInRoom.containsKey(client.getClientId())) {
-            info("Attempting to add a client that already exists in the room");
-            return;
+        synchronized (membershipLock) {
+            if (!addMember(client)) {
+                info("Attempting to add a client that already exists in the room");
+                return;
+            }
+            client.setCurrentRoom(this);
+            batched(() -> {
+                if (!syncExistingClients(client) || !notifySelf(client, true)) {
+                    // it's the incoming client that can't be reached
+                    System.out.println(String.format("Removing disconnected %s from list", client.getDisplayName()));
+                    disconnect(client);
+                }
+            });
+            if (clientsInRoom.get(client.getClientId()) == client) {
+                // everyone else hears about it in the next presence delta
+                presenceChanged(presence.join(client.getClientId(), client.getClientName(), members.length - 1));
+            }
         }
-        clientsInRoom.put(client.getClientId(), client);
-        client.setCurrentRoom(this);
-        client.sendResetUserList();
-        syncExistingClients(client);
-        // notify clients of someone joining
-        joinStatusRelay(client, true);
-
     }
 //lsl8 11/24/25
-    protected synchronized void removeClient(ServerThread client) {
+    protected void removeClient(ServerThread client) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
-        if (!clientsInRoom.containsKey(client.getClientId())) {
-            info("Attempting to remove a client that doesn't exist in the room");
-            return;
+        synchronized (membershipLock) {
+            Long removedId = removeMember(client);
+            if (removedId == null) {
+                info("Attempting to remove a client that doesn't exist in the room");
+                return;
+            }
+            // a failure here surfaces in whichever room the client moves to next
+            notifySelf(client, false);
+            presenceChanged(presence.leave(removedId, members.length));
         }
-        ServerThread removedClient = clientsInRoom.get(client.getClientId());
-        if (removedClient != null) {
-            // notify clients of someone joining
-            joinStatusRelay(removedClient, false);
-            clientsInRoom.remove(client.getClientId());
-            autoCleanup();
+        autoCleanup();
+    }
+
+    /**
+     * Sends the incoming client everyone else in the room as a single roster
+     * frame (it replaces the client's user list). In a large room (see
+     * ServerConfig.getLargeRoomThreshold()) it's only the first page plus the
+     * member count, and the client gets no presence deltas until it asks for
+     * more.
+     * 
+     * @param incomingClient
+     * @return false if the client couldn't be reached
+     */
+    private boolean syncExistingClients(ServerThread incomingClient) {
+        int threshold = Server.INSTANCE.getConfig().getLargeRoomThreshold();
+        if (threshold > 0 && members.length >= threshold) {
+            return sendRosterPage(incomingClient, 0, ROSTER_PAGE);
         }
+        rosterSubscribers.add(incomingClient.getClientId());
+        return sendRosterPage(incomingClient, 0, Integer.MAX_VALUE);
     }
 
-    private void syncExistingClients(ServerThread incomingClient) {
-        clientsInRoom.values().forEach(serverThread -> {
-            if (serverThread.getClientId() != incomingClient.getClientId()) {
-                boolean failedToSync = !incomingClient.sendClientInfo(serverThread.getClientId(),
-                        serverThread.getClientName(), RoomAction.JOIN, true);
-                if (failedToSync) {
-                    System.out.println(
-                            String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                    disconnect(serverThread);
-                }
+    /**
+     * Sends a page of the other members, in join order. Offsets shift when
+     * earlier members leave, but deltas are applied idempotently so at worst a
+     * page overlaps the previous one.
+     * 
+     * @param client
+     * @param offset
+     * @param limit
+     * @return false if the client couldn't be reached
+     */
+    private boolean sendRosterPage(ServerThread client, int offset, int limit) {
+        ServerThread[] current = members;
+        int total = clientsInRoom.containsKey(client.getClientId()) ? current.length - 1 : current.length;
+        int start = Math.min(Math.max(0, offset), Math.max(0, total));
+        int size = Math.max(0, Math.min(limit, total - start));
+        long[] clientIds = new long[size];
+        String[] clientNames = new String[size];
+        int index = 0; // position among the other members
+        int count = 0;
+        for (ServerThread serverThread : current) {
+            if (count == size) {
+                break;
             }
-        });
+            if (serverThread == client) {
+                continue;
+            }
+            if (index++ >= start) {
+                clientIds[count] = serverThread.getClientId();
+                clientNames[count] = serverThread.getClientName();
+                count++;
+            }
+        }
+        if (count < size) {
+            // members left while we were copying
+            clientIds = Arrays.copyOf(clientIds, count);
+            clientNames = Arrays.copyOf(clientNames, count);
+        }
+        return client.sendRoster(clientIds, clientNames, start, total);
     }
 //lsl8 11/03/25 Relays messages and status to all clients
-    private void joinStatusRelay(ServerThread client, boolean didJoin) {
-        clientsInRoom.values().removeIf(serverThread -> {
-            String formattedMessage = String.format("Room[%s] %s %s the room",
-                    getName(),
-                    client.getClientId() == serverThread.getClientId() ? "You"
-                            : client.getDisplayName(),
-                    didJoin ? "joined" : "left");
-            final long senderId = client == null ? Constants.DEFAULT_CLIENT_ID : client.getClientId();
-            // Share info of the client joining or leaving the room
-            boolean failedToSync = !serverThread.sendClientInfo(client.getClientId(),
-                    client.getClientName(), didJoin ? RoomAction.JOIN : RoomAction.LEAVE);
-            // Send the server generated message to the current client
-            boolean failedToSend = !serverThread.sendMessage(senderId, formattedMessage);
-            if (failedToSend || failedToSync) {
-                System.out.println(
-                        String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                disconnect(serverThread);
+    /**
+     * Tells the client joining or leaving about its own move right away; the
+     * other members find out through the presence delta
+     * 
+     * @param client
+     * @param didJoin
+     * @return false if the client couldn't be reached
+     */
+    private boolean notifySelf(ServerThread client, boolean didJoin) {
+        boolean sentStatus = client.sendClientInfo(client.getClientId(), client.getClientName(),
+                didJoin ? RoomAction.JOIN : RoomAction.LEAVE);
+        boolean sentMessage = client.sendMessage(client.getClientId(),
+                String.format("Room[%s] You %s the room", getName(), didJoin ? "joined" : "left"));
+        return sentStatus && sentMessage;
+    }
+
+    /**
+     * Schedules a presence flush after the configured window, which gives a
+     * burst of joins/leaves (e.g. everyone arriving for a match) time to collect
+     * into one delta
+     * 
+     * @param firstChange result of presence.join()/leave(); only the first change
+     *                    of a window schedules
+     */
+    private void presenceChanged(boolean firstChange) {
+        if (!firstChange) {
+            return;
+        }
+        long window = Server.INSTANCE.getConfig().getPresenceWindowMillis();
+        if (window <= 0) {
+            enqueue(this::flushPresence);
+        } else {
+            Server.INSTANCE.getTimingWheel().schedule(() -> enqueue(this::flushPresence), window,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the mailbox: sends every member the same encoded delta
+     */
+    private void flushPresence() {
+        if (!isRunning) {
+            return;
+        }
+        ServerThread[] recipients;
+        PresencePayload delta;
+        // taken together so anyone joining after this drain gets the newer state
+        // from their own sync instead
+        synchronized (membershipLock) {
+            recipients = subscribedMembers();
+            delta = presence.drain(recipients.length);
+        }
+        if (delta == null) {
+            return;
+        }
+        final SharedFrame frame = encodeOnce(delta);
+        if (frame != null) {
+            broadcast(frame, recipients);
+        }
+    }
+
+    private static List<ServerThread> addFailed(List<ServerThread> failed, ServerThread serverThread) {
+        if (failed == null) {
+            failed = new ArrayList<>(2);
+        }
+        failed.add(serverThread);
+        return failed;
+    }
+
+    /**
+     * Removes recipients whose send failed; runs after the fan-out so nothing is
+     * being iterated or locked while the room changes
+     * 
+     * @param failed may be null
+     */
+    private void removeFailed(List<ServerThread> failed) {
+        if (failed == null) {
+            return;
+        }
+        for (ServerThread serverThread : failed) {
+            System.out.println(
+                    String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
+            disconnect(serverThread);
+        }
+    }
+
+    private ServerThread[] subscribedMembers() {
+        ServerThread[] current = members;
+        if (rosterSubscribers.size() >= current.length) {
+            return current;
+        }
+        ServerThread[] subscribed = new ServerThread[current.length];
+        int count = 0;
+        for (ServerThread member : current) {
+            if (rosterSubscribers.contains(member.getClientId())) {
+                subscribed[count++] = member;
+            }
+        }
+        return Arrays.copyOf(subscribed, count);
+    }
+
+    /**
+     * Encodes a payload for a broadcast
+     * 
+     * @param payload
+     * @return the shared frame or null if it couldn't be encoded
+     */
+    private SharedFrame encodeOnce(Payload payload) {
+        try {
+            return SharedFrame.encode(payload);
+        } catch (IOException e) {
+            log(ServerLog.Level.WARN, () -> "Unable to encode broadcast: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs one room event with every member's output corked, so everything the
+     * event sends (e.g. battle results, points and the next round start) leaves
+     * in one flush per member when write batching is enabled
+     * 
+     * @param event
+     */
+    protected void batched(Runnable event) {
+        ServerThread[] members = this.members;
+        for (ServerThread member : members) {
+            member.corkOutput();
+        }
+        try {
+            event.run();
+        } finally {
+            for (ServerThread member : members) {
+                member.uncorkOutput();
+            }
+        }
+    }
+
+    /**
+     * Encodes the payload once and queues the same bytes for every member.
+     * Note: Clients that fail to receive it get removed from the room.
+     * <p>
+     * No lock is held: the member snapshot is iterated as-is, so a concurrent
+     * join/leave simply isn't part of this broadcast.
+     * </p>
+     * 
+     * @param payload
+     */
+    protected void broadcast(Payload payload) {
+        if (!isRunning) { // block action if Room isn't running
+            return;
+        }
+        final SharedFrame frame = encodeOnce(payload);
+        if (frame == null) {
+            return;
+        }
+        broadcast(frame);
+    }
+
+    private void broadcast(SharedFrame frame) {
+        broadcast(frame, members);
+    }
+
+    private void broadcast(SharedFrame frame, ServerThread[] recipients) {
+        List<ServerThread> failed = null;
+        for (ServerThread serverThread : recipients) {
+            if (!serverThread.sendToClient(frame)) {
+                failed = addFailed(failed, serverThread);
+            }
+        }
+        removeFailed(failed);
+    }
+
+    /**
+     * Server-wide announcement: queues the already encoded frame for every
+     * member from the room's mailbox, so it's ordered with the room's own
+     * messages and rooms on different shards deliver it in parallel
+     * 
+     * @param frame
+     * @param onDelivered runs once the frame is queued for every member (or the
+     *                    room turned out to be closed)
+     */
+    protected void announce(SharedFrame frame, Runnable onDelivered) {
+        enqueue(() -> {
+            try {
+                if (isRunning) {
+                    broadcast(frame);
+                }
+            } finally {
+                onDelivered.run();
             }
-            return failedToSend;
         });
     }
 
@@ -106,15 +500,12 @@ public class Room implements AutoCloseable {
      * Internally calls processCommand and evaluates as necessary.
      * Note: Clients that fail to receive a message get removed from
      * connectedClients.
-     * Adding the synchronized keyword ensures that only one thread can execute
-     * these methods at a time,
-     * preventing concurrent modification issues and ensuring thread safety
      * 
      * @param message
      * @param sender  ServerThread (client) sending the message or null if it's a
      *                server-generated message
      */
-    protected synchronized void relay(ServerThread sender, String message) {
+    protected void relay(ServerThread sender, String message) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
@@ -123,70 +514,56 @@ public class Room implements AutoCloseable {
         String senderString = sender == null ? String.format("Room[%s]", getName())
                 : sender.getDisplayName();
         final long senderId = sender == null ? Constants.DEFAULT_CLIENT_ID : sender.getClientId();
-        // Note: formattedMessage must be final (or effectively final) since outside
-        // scope can't be changed inside a callback function (see removeIf() below)
         final String formattedMessage = String.format("%s: %s", senderString, message);
 
-        // loop over clients and send out the message; remove client if message failed
-        // to be sent
-        // Note: this uses a lambda expression for each item in the values() collection,
-        // it's one way we can safely remove items during iteration
-        info(String.format("sending message to %s recipients: %s", clientsInRoom.size(), formattedMessage));
-
-        clientsInRoom.values().removeIf(serverThread -> {
-            boolean failedToSend = !serverThread.sendMessage(senderId, formattedMessage);
-            if (failedToSend) {
-                System.out.println(
-                        String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                disconnect(serverThread);
-            }
-            return failedToSend;
-        });
+        // every member gets identical bytes, so the payload is encoded once and the
+        // same frame is queued for each recipient (see broadcast())
+        log(ServerLog.Level.DEBUG, () -> String.format("sending message to %s recipients: %s",
+                members.length, formattedMessage));
+        broadcast(ServerThread.buildMessage(senderId, formattedMessage));
     }
 
     /**
      * Takes a ServerThread and removes them from the Server
-     * Adding the synchronized keyword ensures that only one thread can execute
-     * these methods at a time,
-     * preventing concurrent modification issues and ensuring thread safety
+     * Note: the other members see it as a leave in the next presence delta;
+     * removing the same client twice is a no-op
      * 
      * @param client
      */
-    private synchronized void disconnect(ServerThread client) {
+    private void disconnect(ServerThread client) {
         if (!isRunning) { // block action if Room isn't running
             return;
         }
-        ServerThread disconnectingServerThread = clientsInRoom.remove(client.getClientId());
-        if (disconnectingServerThread != null) {
-
-            clientsInRoom.values().removeIf(serverThread -> {
-                if (serverThread.getClientId() == disconnectingServerThread.getClientId()) {
-                    return true;
-                }
-                boolean failedToSend = !serverThread.sendClientInfo(disconnectingServerThread.getClientId(),
-                        disconnectingServerThread.getClientName(), RoomAction.LEAVE);
-                if (failedToSend) {
-                    System.out.println(
-                            String.format("Removing disconnected %s from list", serverThread.getDisplayName()));
-                    disconnect(serverThread);
-                }
-                return failedToSend;
-            });
-            relay(null, disconnectingServerThread.getDisplayName() + " disconnected");
-            disconnectingServerThread.disconnect();
+        Long removedId;
+        synchronized (membershipLock) {
+            removedId = removeMember(client);
+            if (removedId != null) {
+                presenceChanged(presence.leave(removedId, members.length));
+            }
+        }
+        if (removedId != null) {
+            client.disconnect();
         }
         autoCleanup();
     }
 
-    protected synchronized void disconnectAll() {
+    /**
+     * Server shutdown: the room stops acting (no announcements, no game events)
+     * so its clients can be closed directly
+     */
+    protected void stop() {
+        isRunning = false;
+        info("Stopped");
+    }
+
+    protected void disconnectAll() {
         info("Disconnect All triggered");
         if (!isRunning) {
             return;
         }
-        clientsInRoom.values().removeIf(client -> {
+        for (ServerThread client : members) {
             disconnect(client);
-            return true;
-        });
+        }
         info("Disconnect All finished");
     }
 
@@ -194,38 +571,50 @@ public class Room implements AutoCloseable {
      * Attempts to close the room to free up resources if it's empty
      */
     private void autoCleanup() {
-        if (!Room.LOBBY.equalsIgnoreCase(name) && clientsInRoom.isEmpty()) {
+        if (!Room.LOBBY.equalsIgnoreCase(name) && members.length == 0) {
             close();
         }
     }
 
     @Override
     public void close() {
+        synchronized (membershipLock) {
+            if (closing) {
+                return; // migrating the last client below triggers autoCleanup() again
+            }
+            closing = true;
+        }
         // attempt to gracefully close and migrate clients
-        if (!clientsInRoom.isEmpty()) {
+        ServerThread[] remaining = members;
+        if (remaining.length > 0) {
             relay(null, "Room is shutting down, migrating to lobby");
-            info(String.format("migrating %s clients", clientsInRoom.size()));
-            clientsInRoom.values().removeIf(client -> {
+            info(String.format("migrating %s clients", remaining.length));
+            for (ServerThread client : remaining) {
                 try {
                     Server.INSTANCE.joinRoom(Room.LOBBY, client);
                 } catch (RoomNotFoundException e) {
                     e.printStackTrace();
                     // TODO, fill in, this shouldn't happen though
                 }
-                return true;
-            });
+            }
         }
         Server.INSTANCE.removeRoom(this);
         isRunning = false;
-        clientsInRoom.clear();
+        synchronized (membershipLock) {
+            clientsInRoom.clear();
+            rosterSubscribers.clear();
+            members = NO_MEMBERS;
+        }
         info(String.format("closed"));
     }
 
     // start handle methods
+    // Note: create/join/disconnect change membership, which has its own lock
+    // (membershipLock) and must take effect before the client's next payload,
+    // so they run on the caller; everything else goes through the mailbox
     public void handleCreateRoom(ServerThread sender, String roomName) {
         try {
-            Server.INSTANCE.createRoom(roomName);
-            Server.INSTANCE.joinRoom(roomName, sender);
+            Server.INSTANCE.createAndJoinRoom(roomName, sender);
         } catch (RoomNotFoundException e) {
             info("Room wasn't found (this shouldn't happen)");
             e.printStackTrace();
@@ -242,7 +631,38 @@ public class Room implements AutoCloseable {
         }
     }
 
-    protected synchronized void handleDisconnect(BaseServerThread sender) {
+    /**
+     * Answers ROOM_LIST from the Server's room index (read-only, so it doesn't
+     * need the mailbox)
+     * 
+     * @param sender
+     * @param prefix
+     * @param offset
+     * @param limit
+     */
+    public void handleListRooms(ServerThread sender, String prefix, int offset, int limit) {
+        sender.sendRoomList(prefix, Server.INSTANCE.listRooms(prefix, offset, limit));
+    }
+
+    /**
+     * Sends the next page of members; asking for a page means the client wants
+     * the full list, so it gets presence deltas from now on
+     * 
+     * @param sender
+     * @param offset
+     * @param limit  0 (or less) uses the default page size
+     */
+    public void handleRosterPage(ServerThread sender, int offset, int limit) {
+        synchronized (membershipLock) {
+            if (clientsInRoom.get(sender.getClientId()) != sender) {
+                return; // moved on already
+            }
+            rosterSubscribers.add(sender.getClientId());
+        }
+        sendRosterPage(sender, offset, limit <= 0 ? ROSTER_PAGE : Math.min(limit, MAX_ROSTER_PAGE));
+    }
+
+    protected void handleDisconnect(BaseServerThread sender) {
         handleDisconnect((ServerThread) sender);
     }
 
@@ -251,19 +671,21 @@ public class Room implements AutoCloseable {
      * 
      * @param serverThread
      */
-    protected synchronized void handleDisconnect(ServerThread sender) {
+    protected void handleDisconnect(ServerThread sender) {
         disconnect(sender);
     }
 
-    protected synchronized void handleReverseText(ServerThread sender, String text) {
-        StringBuilder sb = new StringBuilder(text);
-        sb.reverse();
-        String rev = sb.toString();
-        relay(sender, rev);
+    protected void handleReverseText(ServerThread sender, String text) {
+        enqueue(sender, () -> {
+            StringBuilder sb = new StringBuilder(text);
+            sb.reverse();
+            String rev = sb.toString();
+            relay(sender, rev);
+        });
     }
 //lsl8 11/03/25 Replay Messages
-    protected synchronized void handleMessage(ServerThread sender, String text) {
-        relay(sender, text);
+    protected void handleMessage(ServerThread sender, String text) {
+        enqueue(sender, () -> relay(sender, text));
     }
     // end handle methods
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package Project.Server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Sorted index of room names kept alongside Server.rooms for ROOM_LIST. In
+ * cluster mode it also holds the rooms of every other node (see Cluster), so a
+ * listing covers the whole cluster.
+ * <p>
+ * Writes (create/remove) go to a skip list and bump a version. Reads are
+ * served from a sorted array snapshot that is only rebuilt when the version
+ * changed since the last one, so repeated listings of a large, stable set of
+ * rooms don't copy anything: a prefix is two binary searches and a page is an
+ * array slice.
+ * </p>
+ */
+class RoomIndex {
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>(); // key -> display name
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot = new Snapshot(-1, new String[0], new String[0]);
+
+    /**
+     * One page of matches plus the total number of matches
+     */
+    static final class Page {
+        final List<String> rooms;
+        final int offset;
+        final int total;
+
+        Page(List<String> rooms, int offset, int total) {
+            this.rooms = rooms;
+            this.offset = offset;
+            this.total = total;
+        }
+    }
+
+    private static final class Snapshot {
+        final long version;
+        final String[] keys; // sorted lowercase names
+        final String[] names; // display names, same order
+
+        Snapshot(long version, String[] keys, String[] names) {
+            this.version = version;
+            this.keys = keys;
+            this.names = names;
+        }
+    }
+
+    void add(String name) {
+        names.put(name.toLowerCase(), name);
+        version.incrementAndGet();
+    }
+
+    void remove(String name) {
+        if (names.remove(name.toLowerCase()) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param filter gets the display name
+     */
+    void removeIf(Predicate<String> filter) {
+        if (names.values().removeIf(filter)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param prefix case-insensitive; null or blank matches every room
+     * @param offset first match to return
+     * @param limit  page size
+     * @return the requested page
+     */
+    Page find(String prefix, int offset, int limit) {
+        Snapshot current = current();
+        String key = prefix == null ? "" : prefix.trim().toLowerCase();
+        int from = lowerBound(current.keys, key);
+        // every key with this prefix sorts before prefix + '\uffff'
+        int to = key.isEmpty() ? current.keys.length : lowerBound(current.keys, key + '\uffff');
+        int total = to - from;
+        int start = Math.min(from + Math.max(0, offset), to);
+        int end = (int) Math.min((long) start + Math.max(0, limit), to);
+        return new Page(Arrays.asList(Arrays.copyOfRange(current.names, start, end)), start - from, total);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current.version == version.get()) {
+            return current;
+        }
+        synchronized (this) {
+            // another request may have rebuilt it while we waited
+            long latest = version.get();
+            current = snapshot;
+            if (current.version != latest) {
+                // the skip list is already sorted, so this is a copy, not a sort
+                String[] keys = new String[names.size()];
+                String[] display = new String[keys.length];
+                int i = 0;
+                for (Map.Entry<String, String> entry : names.entrySet()) {
+                    if (i == keys.length) {
+                        break; // grew while copying; the next request rebuilds
+                    }
+                    keys[i] = entry.getKey();
+                    display[i] = entry.getValue();
+                    i++;
+                }
+                if (i < keys.length) {
+                    keys = Arrays.copyOf(keys, i);
+                    display = Arrays.copyOf(display, i);
+                }
+                current = new Snapshot(latest, keys, display);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
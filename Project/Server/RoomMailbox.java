@@ -0,0 +1,74 @@
+package Project.Server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import Project.Common.TextFX.Color;
+
+/**
+ * A Room's mailbox: commands from any thread are queued (multi-producer) and
+ * run one at a time, in arrival order, on the Room's shard loop (single
+ * consumer).
+ * <p>
+ * Everything a Room does from its mailbox is single threaded without holding a
+ * lock, and a slow Room only ever occupies its own shard, never the reader
+ * thread of the client that sent the payload.
+ * </p>
+ */
+class RoomMailbox implements Executor {
+    private static final int MAX_BATCH = 64; // give other rooms on the shard a turn
+
+    private final String name;
+    private final RoomShards.Shard shard;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private void log(ServerLog.Level level, Supplier<String> message) {
+        ServerLog.log(level, Color.PURPLE, () -> String.format("Mailbox[%s]: %s", name, message.get()));
+    }
+
+    RoomMailbox(String name, RoomShards.Shard shard) {
+        this.name = name;
+        this.shard = shard;
+    }
+
+    /**
+     * Queues the command; never blocks and never runs it on the caller's thread
+     */
+    @Override
+    public void execute(Runnable command) {
+        shard.onQueued();
+        commands.add(command);
+        if (scheduled.compareAndSet(false, true)) {
+            shard.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable command;
+            int count = 0;
+            while (count++ < MAX_BATCH && (command = commands.poll()) != null) {
+                long start = System.nanoTime();
+                try {
+                    command.run();
+                } catch (Exception e) {
+                    log(ServerLog.Level.WARN, () -> "Command failed: " + e);
+                    e.printStackTrace();
+                } finally {
+                    shard.onExecuted(System.nanoTime() - start);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // something may have been queued after the last poll (or we hit the
+            // batch limit); reschedule unless another producer already did
+            if (!commands.isEmpty() && scheduled.compareAndSet(false, true)) {
+                shard.execute(this::drain);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package Project.Server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed set of single-threaded loops that run the Room mailboxes.
+ * <p>
+ * A Room is assigned to a shard by the hash of its (lowercase) name when it's
+ * created and stays there for its whole life, so every room's commands always
+ * run on the same thread and independent rooms on different shards never
+ * contend with each other. Note: Java can't pin a thread to a core; the OS
+ * scheduler is left to spread the shard threads (one per core by default).
+ * </p>
+ */
+class RoomShards {
+    private final Shard[] shards;
+
+    RoomShards(int count) {
+        shards = new Shard[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Picks the shard for a new room and counts it there
+     *
+     * @param roomName
+     * @return
+     */
+    Shard assign(String roomName) {
+        int h = roomName.toLowerCase().hashCode();
+        h ^= (h >>> 16); // spread similar names
+        Shard shard = shards[Math.floorMod(h, shards.length)];
+        shard.rooms.incrementAndGet();
+        return shard;
+    }
+
+    /**
+     * Called when a room is removed
+     *
+     * @param shard
+     */
+    void release(Shard shard) {
+        shard.rooms.decrementAndGet();
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return rooms, queued commands, executed commands and busy time per shard
+     */
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Shard shard : shards) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(shard);
+        }
+        return sb.toString();
+    }
+
+    void shutdown() {
+        for (Shard shard : shards) {
+            shard.loop.shutdownNow();
+        }
+    }
+
+    /**
+     * One loop thread plus its load counters
+     */
+    static class Shard implements Executor {
+        private final int index;
+        private final ExecutorService loop;
+        private final AtomicInteger rooms = new AtomicInteger();
+        private final LongAdder queued = new LongAdder(); // commands waiting in this shard's mailboxes
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+
+        private Shard(int index) {
+            this.index = index;
+            this.loop = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "RoomShard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void execute(Runnable drain) {
+            loop.execute(drain);
+        }
+
+        void onQueued() {
+            queued.increment();
+        }
+
+        void onExecuted(long nanos) {
+            queued.decrement();
+            executed.increment();
+            busyNanos.add(nanos);
+        }
+
+        int getRoomCount() {
+            return rooms.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("shard%s[rooms=%s, queued=%s, executed=%s, busy=%sms]", index, rooms.get(),
+                    queued.sum(), executed.sum(), busyNanos.sum() / 1_000_000);
+        }
+    }
+}
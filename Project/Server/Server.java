@@ -1,9 +1,27 @@
 package Project.Server;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.SecureRandom;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import Project.Common.Constants;
 import Project.Common.TextFX;
 import Project.Common.TextFX.Color;
 import Project.Exception.DuplicateRoomException;
@@ -13,67 +31,525 @@ public enum Server {
     INSTANCE; // Singleton instance
 
     private int port = 3000;
+    private ServerConfig config = new ServerConfig();
+    private ExecutorService connectionExecutor; // blocking transport readers (and writers on virtual threads)
+    private ExecutorService writerPool; // blocking transport writers on platform threads
+    private volatile NioTransport nioTransport;
+    private volatile Closeable listener; // server socket/channel; closing it stops accept()
+    private RoomShards roomShards; // loops that run the Room mailboxes
+    // every server-side deadline (handshakes, rounds, periodic jobs) shares this
+    // one timer thread
+    private final TimingWheel timingWheel = new TimingWheel(50, TimeUnit.MILLISECONDS, 9);
     // connected clients
     // Use ConcurrentHashMap for thread-safe client management
     // The key is the unique Room name and the Room is the instance
     private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
-    private boolean isRunning = true;
-    private long nextClientId = 0;
+    // sorted view of the room names for ROOM_LIST (kept in step with rooms)
+    private final RoomIndex roomIndex = new RoomIndex();
+    private static final int DEFAULT_ROOM_PAGE = 20;
+    private static final int MAX_ROOM_PAGE = 100;
+    private volatile boolean isRunning = true;
+    // every initialized client by id and by name, whichever room they're in
+    private final SessionDirectory sessions = new SessionDirectory();
+    private volatile Cluster cluster; // null when running standalone
+    private final SecureRandom tokenSource = new SecureRandom();
+    // sessions parked past the resume grace (allocated on first use)
+    private volatile SessionSlab sessionSlab;
+    private static final int SLAB_SWEEP_SLOTS = 65_536; // per second
+    private volatile AdmissionControl admission; // connection limits checked by the accept loop
 
     private void info(String message) {
-        System.out.println(TextFX.colorize(String.format("Server: %s", message), Color.YELLOW));
+        ServerLog.log(ServerLog.Level.INFO, Color.YELLOW, () -> String.format("Server: %s", message));
     }
 
     private Server() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             info("JVM is shutting down. Perform cleanup tasks.");
             shutdown();
+            info("Transport stats: " + getTransportStats());
+            info("Room shards: " + getShardStats());
+            info("Presence: " + getPresenceStats());
+            info("Announcements: " + getBroadcastStats());
+            info("Sessions: " + getSessionStats());
+            info("Admission: " + getAdmissionStats());
+            info("Inbound limits: " + getInboundStats());
         }));
     }
 
     /**
      * Gracefully disconnect clients
+     * <p>
+     * Stops accepting, stops every Room (so closing clients doesn't announce
+     * anything to the ones still connected), then sends each client one shutdown
+     * notice and closes it, spread over a few threads. Queued frames get until
+     * the shutdown timeout to reach the sockets; whatever is still queued after
+     * that is reported and dropped with the JVM.
+     * </p>
      */
     private void shutdown() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(config.getShutdownTimeoutMillis());
+        isRunning = false;
+        closeListener();
         try {
-            // chose removeIf over forEach to avoid potential
-            // ConcurrentModificationException
-            // since empty rooms tell the server to remove themselves
-            rooms.values().removeIf(room -> {
-                room.disconnectAll();
-                return true;
-            });
+            for (Room room : rooms.values()) {
+                room.stop();
+            }
+            List<ServerThread> clients = new ArrayList<>(getClientCount());
+            sessions.forEach(clients::add);
+            SharedFrame notice = SharedFrame.encode(
+                    ServerThread.buildMessage(Constants.DEFAULT_CLIENT_ID, "Server is shutting down"));
+            closeInParallel(clients, notice, deadline);
+
+            // wait for the writers to empty the queues
+            int pendingClients;
+            long pendingFrames;
+            while (true) {
+                pendingClients = 0;
+                pendingFrames = 0;
+                for (ServerThread client : clients) {
+                    int pending = client.getPendingFrames();
+                    if (pending > 0) {
+                        pendingClients++;
+                        pendingFrames += pending;
+                    }
+                }
+                if (pendingFrames == 0 || System.nanoTime() >= deadline) {
+                    break;
+                }
+                Thread.sleep(10);
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (pendingFrames == 0) {
+                info(String.format("Shutdown: closed %s clients in %sms, everything flushed", clients.size(), elapsed));
+            } else {
+                info(String.format("Shutdown: closed %s clients in %sms, %s frames unflushed for %s clients",
+                        clients.size(), elapsed, pendingFrames, pendingClients));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            rooms.clear();
+            Cluster current = cluster;
+            if (current != null) {
+                current.close();
+            }
+            stopTransport();
+            RoomShards shards = roomShards;
+            if (shards != null) {
+                shards.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Closes the clients in chunks on a few short-lived threads; gives up waiting
+     * at the deadline
+     */
+    private void closeInParallel(List<ServerThread> clients, SharedFrame notice, long deadline)
+            throws InterruptedException {
+        if (clients.isEmpty()) {
+            return;
+        }
+        int workers = Math.min(Runtime.getRuntime().availableProcessors(), clients.size());
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "Shutdown-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int chunk = (clients.size() + workers - 1) / workers;
+        for (int from = 0; from < clients.size(); from += chunk) {
+            List<ServerThread> part = clients.subList(from, Math.min(from + chunk, clients.size()));
+            pool.execute(() -> {
+                for (ServerThread client : part) {
+                    client.closeForShutdown(notice);
+                }
+            });
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            info("Shutdown deadline reached while closing clients");
+            pool.shutdownNow();
+        }
+    }
+
+    private void closeListener() {
+        Closeable current = listener;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private void stopTransport() {
+        NioTransport transport = nioTransport;
+        if (transport != null) {
+            transport.shutdown();
+        }
+        ExecutorService executor = connectionExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        ExecutorService writers = writerPool;
+        if (writers != null) {
+            writers.shutdownNow();
         }
     }
 //lsl8 11/03/25 Snippet of code where Server is listening and waiting for connections
-    private void start(int port) {
-        this.port = port;
+    private void start(ServerConfig config) {
+        this.config = config;
+        this.port = config.getPort();
+        ServerLog.setLevel(config.getLogLevel());
+        ServerLog.setTraceSampleRate(config.getTraceSampleRate());
+        roomShards = new RoomShards(config.getRoomWorkers());
+        admission = new AdmissionControl(config);
+        timingWheel.scheduleAtFixedRate(admission::sweep, 60, TimeUnit.SECONDS);
         // server listening
         info("Listening on port " + this.port);
-        // Simplified client connection loop
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
+        try {
             createRoom(Room.LOBBY);// create the first room (lobby)
+            startCluster();
+            startStatsReporter();
+            if (config.getTransport() == ServerConfig.Transport.NIO) {
+                acceptNio();
+            } else {
+                acceptBlocking();
+            }
+        } catch (DuplicateRoomException e) {
+            System.err.println(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
+        } catch (IOException e) {
+            if (isRunning) {
+                System.err.println(TextFX.colorize("Error accepting connection", Color.RED));
+                e.printStackTrace();
+            } else {
+                info("Stopped accepting connections");
+            }
+        } finally {
+            info("Closing server socket");
+        }
+    }
+
+    /**
+     * Joins the cluster if --cluster-nodes lists this node's --node-id
+     * 
+     * @throws IOException if the cluster bus can't listen
+     */
+    private void startCluster() throws IOException {
+        if (!config.isClustered()) {
+            if (!config.getClusterNodes().isEmpty()) {
+                info("--node-id is missing or not in --cluster-nodes; running standalone");
+            }
+            return;
+        }
+        String nodeId = config.getNodeId();
+        List<String> nodeIds = new ArrayList<>(config.getClusterNodes().keySet());
+        sessions.partitionIds(nodeIds.indexOf(nodeId), nodeIds.size());
+        ClusterBus bus = new TcpClusterBus(nodeId, config.getClusterNodes(), config.getClusterSecret());
+        Cluster started = new Cluster(nodeId, nodeIds, bus);
+        started.start();
+        cluster = started;
+        info(String.format("Node %s of cluster %s", nodeId, nodeIds));
+    }
+
+    /**
+     * @return this node's part of the cluster or null when running standalone
+     */
+    protected Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * @return frame/flush/socket write counters for every connection so far
+     */
+    public String getTransportStats() {
+        return TransportStats.summary();
+    }
+
+    /**
+     * @return smoothed heartbeat RTT (ms) by client id for every connected
+     *         client; -1 means no PONG yet
+     */
+    public Map<Long, Double> getRttSnapshot() {
+        Map<Long, Double> snapshot = new HashMap<>();
+        sessions.forEach(client -> snapshot.put(client.getClientId(), client.getRttMillis()));
+        return snapshot;
+    }
+
+    /**
+     * @param clientId
+     * @return the connected client with this id or null
+     */
+    protected ServerThread getClient(long clientId) {
+        return sessions.get(clientId);
+    }
+
+    /**
+     * @param action runs for every initialized, connected client
+     */
+    protected void forEachClient(Consumer<ServerThread> action) {
+        sessions.forEach(action);
+    }
+
+    /**
+     * @param name case-insensitive client name
+     * @return every connected client using that name (names aren't unique)
+     */
+    protected ServerThread[] getClientsByName(String name) {
+        return sessions.getByName(name);
+    }
+
+    /**
+     * @return number of initialized, connected clients
+     */
+    public int getClientCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Called by a ServerThread's cleanup() before its User is reset
+     * 
+     * @param clientId
+     * @param client
+     */
+    protected void onClientClosed(long clientId, BaseServerThread client) {
+        sessions.unregister(clientId, client);
+        Cluster current = cluster;
+        if (current != null) {
+            current.onClientClosed(client);
+        }
+    }
+
+    /**
+     * Periodically prints the transport counters if --stats-interval was given
+     */
+    private void startStatsReporter() {
+        int seconds = config.getStatsIntervalSeconds();
+        if (seconds <= 0) {
+            return;
+        }
+        timingWheel.scheduleAtFixedRate(() -> {
+            info("Connected clients: " + getClientCount());
+            info("Transport stats: " + getTransportStats());
+            info("Room shards: " + getShardStats());
+            info("Presence: " + getPresenceStats());
+            info("Announcements: " + getBroadcastStats());
+            info("Sessions: " + getSessionStats());
+            info("Admission: " + getAdmissionStats());
+            info("Inbound limits: " + getInboundStats());
+        }, seconds, TimeUnit.SECONDS);
+    }
+
+    protected TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    protected ServerConfig getConfig() {
+        return config;
+    }
+
+    protected ExecutorService getConnectionExecutor() {
+        return connectionExecutor;
+    }
+
+    /**
+     * @return where blocking connections drain their outbound queues: the
+     *         shared writer pool on platform threads, otherwise the connection
+     *         executor
+     */
+    protected ExecutorService getWriterExecutor() {
+        return writerPool != null ? writerPool : connectionExecutor;
+    }
+
+    /**
+     * @return rooms and load (queued/executed commands, busy time) per room shard
+     */
+    public String getShardStats() {
+        RoomShards shards = roomShards;
+        return shards == null ? "no shards" : shards.summary();
+    }
+
+    /**
+     * @return presence deltas sent and the individual join/leave notifications
+     *         they replaced
+     */
+    public String getPresenceStats() {
+        return PresenceBuffer.summary();
+    }
+
+    /**
+     * @return how many server-wide announcements this node delivered and how
+     *         long they took
+     */
+    public String getBroadcastStats() {
+        return BroadcastStats.summary();
+    }
+
+    /**
+     * @return open connections and how many were admitted or shed (and why)
+     */
+    public String getAdmissionStats() {
+        AdmissionControl current = admission;
+        return current == null ? "not accepting" : current.summary();
+    }
+
+    /**
+     * @return client payloads dropped, delayed or answered with a throttle
+     *         notice
+     */
+    public String getInboundStats() {
+        return InboundLimiter.summary();
+    }
+
+    /**
+     * @return parked sessions right now plus resume/expiry totals
+     */
+    public String getSessionStats() {
+        SessionSlab slab = sessionSlab;
+        return String.format("parkedNow=%s %s %s", sessions.getParkedCount(), ParkedSession.summary(),
+                slab == null ? "offHeap=unused" : slab.summary());
+    }
+
+    /**
+     * Executor that owns the blocking read loops and their writers; virtual
+     * threads make an idle connection cost a small heap object instead of an OS
+     * thread
+     * 
+     * @return
+     */
+    private ExecutorService newConnectionExecutor() {
+        if (config.getThreadMode() == ServerConfig.ThreadMode.VIRTUAL) {
+            info("Running connections on virtual threads");
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        // a dedicated writer per client would double the OS threads, so the
+        // writers share a small pool instead
+        writerPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Original thread-per-client model
+     * 
+     * @throws IOException
+     */
+    private void acceptBlocking() throws IOException {
+        connectionExecutor = newConnectionExecutor();
+        // Simplified client connection loop
+        try (ServerSocket serverSocket = new ServerSocket(port, config.getAcceptBacklog())) {
+            listener = serverSocket;
             while (isRunning) {
+                if (!awaitAdmissionSlot()) {
+                    continue;
+                }
                 info("Waiting for next client");
                 Socket incomingClient = serverSocket.accept(); // blocking action, waits for a client connection
+                if (!admission.admit(incomingClient.getInetAddress())) {
+                    shed(incomingClient);
+                    continue;
+                }
                 info("Client connected");
                 // wrap socket in a ServerThread, pass a callback to notify the Server when
                 // they're initialized
                 ServerThread serverThread = new ServerThread(incomingClient, this::onServerThreadInitialized);
-                // start the thread (typically an external entity manages the lifecycle and we
-                // don't have the thread start itself)
-                serverThread.start();
+                // the executor manages the lifecycle, the ServerThread never starts itself;
+                // run() returns once the socket is gone, which frees the admission slot
+                connectionExecutor.execute(() -> {
+                    try {
+                        serverThread.run();
+                    } finally {
+                        admission.release();
+                    }
+                });
                 // Note: We don't yet add the ServerThread reference to our connectedClients map
             }
-        } catch (DuplicateRoomException e) {
-            System.err.println(TextFX.colorize("Lobby already exists (this shouldn't happen)", Color.RED));
-        } catch (IOException e) {
-            System.err.println(TextFX.colorize("Error accepting connection", Color.RED));
-            e.printStackTrace();
         } finally {
-            info("Closing server socket");
+            if (isRunning) {
+                connectionExecutor.shutdownNow();
+            } // else shutdown() stops it once the clients are drained
+        }
+    }
+
+    /**
+     * Selector based model; accepting still blocks here but every accepted
+     * channel is non-blocking and serviced by one of the NioTransport loops
+     * 
+     * @throws IOException
+     */
+    private void acceptNio() throws IOException {
+        NioTransport transport = new NioTransport(config, this::onServerThreadInitialized);
+        nioTransport = transport;
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            listener = serverChannel;
+            serverChannel.bind(new InetSocketAddress(port), config.getAcceptBacklog());
+            transport.start();
+            info(String.format("Using NIO transport with %s selector loop(s)", transport.getLoopCount()));
+            while (isRunning) {
+                if (!awaitAdmissionSlot()) {
+                    continue;
+                }
+                info("Waiting for next client");
+                SocketChannel incomingClient = serverChannel.accept(); // blocking action, waits for a client connection
+                if (!admission.admit(incomingClient.socket().getInetAddress())) {
+                    shed(incomingClient.socket());
+                    continue;
+                }
+                info("Client connected");
+                try {
+                    transport.register(incomingClient, admission::release);
+                } catch (IOException e) {
+                    info("Failed to set up client channel: " + e.getMessage());
+                    incomingClient.close();
+                    admission.release(); // the connection never got far enough to release it
+                }
+            }
+        } finally {
+            if (isRunning) {
+                transport.shutdown();
+            } // else shutdown() stops it once the clients are drained
+        }
+    }
+
+    /**
+     * AdmissionPolicy.PAUSE: waits (briefly) until a connection slot is free
+     * before accepting again
+     * 
+     * @return false to go around the accept loop again (and recheck isRunning)
+     */
+    private boolean awaitAdmissionSlot() {
+        if (config.getAdmissionPolicy() != ServerConfig.AdmissionPolicy.PAUSE) {
+            return true;
+        }
+        try {
+            return admission.awaitCapacity(250);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true; // admit() still enforces the limit
+        }
+    }
+
+    /**
+     * Drops a connection that wasn't admitted: a reset instead of a normal close
+     * so no TIME_WAIT is left behind, and nothing is written or logged per
+     * connection (see getAdmissionStats())
+     * 
+     * @param socket
+     */
+    private void shed(Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+        } catch (IOException e) {
+            // closing anyway
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already gone
         }
     }
 
@@ -84,9 +560,12 @@ public enum Server {
      * @param serverThread
      */
     private void onServerThreadInitialized(ServerThread serverThread) {
+        // a repeated CLIENT_CONNECT re-initializes; drop the old id first
+        sessions.unregister(serverThread.getClientId(), serverThread);
         // Generate Server controlled clientId
-        nextClientId = Math.max(++nextClientId, 1);
-        serverThread.setClientId(nextClientId);
+        serverThread.setClientId(sessions.nextClientId());
+        serverThread.setResumeToken(newResumeToken());
+        sessions.register(serverThread);
         serverThread.sendClientId();// syncs the data to the Client
         // add initialized client to the lobby
         info(String.format("*%s initialized*", serverThread.getDisplayName()));
@@ -99,6 +578,182 @@ public enum Server {
         }
     }
 
+    private String newResumeToken() {
+        byte[] token = new byte[18];
+        tokenSource.nextBytes(token);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Called when a client's connection drops without the server closing it:
+     * the client keeps its id, room and game state for the resume grace period,
+     * and the rest of the room doesn't see it leave unless it doesn't come back
+     * in time
+     * 
+     * @param client
+     * @return false if the session can't be parked (the caller disconnects it)
+     */
+    protected boolean parkSession(ServerThread client) {
+        String token = client.getResumeToken();
+        int grace = config.getResumeGraceSeconds();
+        if (!isRunning || grace <= 0 || token == null
+                || (client.getCurrentRoom() == null && client.getRemoteNode() == null)) {
+            return false;
+        }
+        ParkedSession session = new ParkedSession(config.getResumeBufferFrames());
+        client.park(session);
+        sessions.park(token, client);
+        // leaving the Room takes its lock and broadcasts, so keep that off the
+        // timer thread
+        session.setExpiry(timingWheel.schedule(() -> CompletableFuture.runAsync(() -> expireSession(token, client)),
+                grace, TimeUnit.SECONDS));
+        return true;
+    }
+
+    private void expireSession(String token, ServerThread client) {
+        if (!sessions.claimParked(token, client)) {
+            return; // resumed in the meantime
+        }
+        client.getParkedSession().expire();
+        info(String.format("*%s didn't come back in time*", client.getDisplayName()));
+        Room room = client.getCurrentRoom();
+        parkOffHeap(token, client, room);
+        if (room != null) {
+            room.handleDisconnect(client); // the other members get the leave now
+        }
+        client.disconnect();
+    }
+
+    /**
+     * Keeps what's needed to restore the session in the off-heap store for the
+     * park window; GameRoom state is read on the room's mailbox first
+     */
+    private void parkOffHeap(String token, ServerThread client, Room room) {
+        SessionSlab slab = getSessionSlab();
+        if (slab == null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(config.getParkWindowSeconds());
+        long clientId = client.getClientId();
+        String clientName = client.getClientName();
+        long framesSent = client.getFramesSent();
+        String roomKey = room == null ? null : room.getName(); // a remote room isn't kept; restores into the lobby
+        if (room instanceof GameRoom) {
+            ((GameRoom) room).snapshotPlayer(clientId, state -> parkOffHeap(slab, token, client, new SessionSlab.Record(
+                    clientId, clientName, roomKey, state.flags, state.points, state.gameSession, framesSent), expiresAt));
+        } else {
+            parkOffHeap(slab, token, client,
+                    new SessionSlab.Record(clientId, clientName, roomKey, 0, 0, 0, framesSent), expiresAt);
+        }
+    }
+
+    private void parkOffHeap(SessionSlab slab, String token, ServerThread client, SessionSlab.Record record,
+            long expiresAt) {
+        if (!slab.put(token, record, expiresAt)) {
+            info(String.format("*%s can't be kept off-heap (store full or name too long); the session is gone*",
+                    client.getDisplayName()));
+        }
+    }
+
+    private SessionSlab getSessionSlab() {
+        if (config.getParkWindowSeconds() <= 0) {
+            return null;
+        }
+        SessionSlab slab = sessionSlab;
+        if (slab == null) {
+            synchronized (this) {
+                slab = sessionSlab;
+                if (slab == null) {
+                    slab = new SessionSlab(config.getParkCapacity());
+                    SessionSlab created = slab;
+                    timingWheel.scheduleAtFixedRate(
+                            () -> created.sweep(System.currentTimeMillis(), SLAB_SWEEP_SLOTS), 1, TimeUnit.SECONDS);
+                    sessionSlab = slab;
+                }
+            }
+        }
+        return slab;
+    }
+
+    /**
+     * Second chance for a token whose grace period is over: brings the session
+     * back from the off-heap store with the same id, in the same room if it
+     * still exists (and the same game, if that's still on). Nothing is replayed;
+     * joining the room sends the current roster.
+     * 
+     * @param next
+     * @param token
+     * @return false if the store doesn't have it either
+     */
+    private boolean restoreSession(ServerThread next, String token) {
+        SessionSlab slab = sessionSlab;
+        SessionSlab.Record record = slab == null ? null : slab.take(token);
+        if (record == null || sessions.get(record.clientId) != null) {
+            return false;
+        }
+        next.restore(record.clientId, record.clientName, record.lastDelivered);
+        next.setResumeToken(newResumeToken());
+        sessions.register(next);
+        next.sendClientId();
+        try {
+            joinRoom(record.roomKey != null ? record.roomKey : Room.LOBBY, next);
+        } catch (RoomNotFoundException e) {
+            next.sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("Room %s is gone", record.roomKey));
+            try {
+                joinRoom(Room.LOBBY, next);
+            } catch (RoomNotFoundException e2) {
+                e2.printStackTrace();
+            }
+        }
+        Room room = next.getCurrentRoom();
+        if (room instanceof GameRoom && room.getName().equalsIgnoreCase(record.roomKey)) {
+            ((GameRoom) room).restorePlayer(next,
+                    new GameRoom.PlayerState(record.gameFlags, record.points, record.gameSession));
+        }
+        info(String.format("*%s restored its parked session*", next.getDisplayName()));
+        return true;
+    }
+
+    /**
+     * Lets a new connection take over a parked session: it gets the same id and
+     * room (so GameRoom state keyed by id carries over), the frames it missed
+     * are replayed and the token is replaced
+     * 
+     * @param next  the new connection's thread, not initialized yet
+     * @param token presented in its CLIENT_CONNECT
+     * @return false if there's no parked session for the token
+     */
+    protected boolean resumeSession(ServerThread next, String token) {
+        if (!next.isAwaitingSession()) {
+            return false;
+        }
+        ServerThread previous = sessions.claimParked(token);
+        if (previous == null) {
+            return restoreSession(next, token);
+        }
+        Room room = previous.getCurrentRoom();
+        next.adopt(previous);
+        next.setResumeToken(newResumeToken()); // tokens are single use
+        sessions.register(next); // replaces previous
+        next.sendClientId();
+        boolean complete = previous.getParkedSession().resume(next);
+        previous.retire();
+        if (room != null) {
+            if (!room.replaceMember(previous, next)) {
+                // the room let it go in the meantime
+                try {
+                    joinRoom(Room.LOBBY, next);
+                } catch (RoomNotFoundException e) {
+                    e.printStackTrace();
+                }
+            } else if (!complete) {
+                room.resync(next);
+            }
+        }
+        info(String.format("*%s resumed its session*", next.getDisplayName()));
+        return true;
+    }
+
     /**
      * Attempts to create a new Room and add it to the tracked rooms collection
      * 
@@ -114,19 +769,36 @@ public enum Server {
         throw new DuplicateRoomException(String.format("Room %s already exists", name));
     }
 
+    // the room's mailbox runs on this shard for the room's whole life
+    RoomShards.Shard shard = roomShards.assign(key);
     Room room;
     if (Room.LOBBY.equalsIgnoreCase(name)) {
-        room = new Room(Room.LOBBY);   // lobby stays a normal chat room
+        room = new Room(Room.LOBBY, shard);   // lobby stays a normal chat room
     } else {
-        room = new GameRoom(name);     // all other rooms are game rooms in MS2
+        room = new GameRoom(name, shard);     // all other rooms are game rooms in MS2
     }
 
-    rooms.put(key, room);
+    if (rooms.putIfAbsent(key, room) != null) {
+        // lost a race with another client creating the same name
+        roomShards.release(shard);
+        throw new DuplicateRoomException(String.format("Room %s already exists", name));
+    }
+    roomIndex.add(room.getName());
+    Cluster current = cluster;
+    if (current != null && room != rooms.get(Room.LOBBY.toLowerCase())) {
+        current.roomAdded(room.getName());
+    }
 }
 
 
     /**
      * Attempts to move a client (ServerThread) between rooms
+     * <p>
+     * The rooms may live on different shards. Membership moves right away on the
+     * caller (the client's own reader thread), so its next payload already goes
+     * to the new room, and anything it still had queued in the old room's
+     * mailbox is dropped there since it's no longer a member.
+     * </p>
      * 
      * @param name   the target room to join
      * @param client the client moving
@@ -135,8 +807,13 @@ public enum Server {
      */
 //lsl8 11/03/25 Snippet of joinRoom
     protected void joinRoom(String name, ServerThread client) throws RoomNotFoundException {
+        Cluster current = cluster;
+        if (current != null && current.route(name, client, false)) {
+            return; // the room is on another node
+        }
         final String nameCheck = name.toLowerCase();
-        if (!rooms.containsKey(nameCheck)) {
+        Room next = rooms.get(nameCheck);
+        if (next == null) {
             throw new RoomNotFoundException(String.format("Room %s wasn't found", name));
         }
         Room currentRoom = client.getCurrentRoom();
@@ -144,67 +821,162 @@ public enum Server {
             info("Removing client from previous Room " + currentRoom.getName());
             currentRoom.removeClient(client);
         }
-        Room next = rooms.get(nameCheck);
         next.addClient(client);
+        if (client.getCurrentRoom() != next && !Room.LOBBY.equalsIgnoreCase(name)) {
+            // the target closed while the client was moving; don't leave it roomless
+            joinRoom(Room.LOBBY, client);
+        }
+    }
+
+    /**
+     * Room.handleCreateRoom(): creates the room and moves the client into it,
+     * on whichever node owns the name
+     * 
+     * @param name
+     * @param client
+     * @throws DuplicateRoomException
+     * @throws RoomNotFoundException
+     */
+    protected void createAndJoinRoom(String name, ServerThread client)
+            throws DuplicateRoomException, RoomNotFoundException {
+        Cluster current = cluster;
+        if (current != null && !current.isLocal(name)) {
+            current.route(name, client, true); // the owner reports a duplicate
+            return;
+        }
+        createRoom(name);
+        joinRoom(name, client);
+    }
+
+    /**
+     * @return this node's lobby
+     */
+    protected Room getLobby() {
+        return rooms.get(Room.LOBBY.toLowerCase());
     }
+
 //lsl8 11/03/25 Snippet of RemoveRoom 
     protected void removeRoom(Room room) {
-        rooms.remove(room.getName().toLowerCase());
-        info(String.format("Removed room %s", room.getName()));
+        if (rooms.remove(room.getName().toLowerCase(), room)) {
+            roomIndex.remove(room.getName());
+            Cluster current = cluster;
+            if (current != null) {
+                current.roomRemoved(room.getName());
+            }
+            roomShards.release(room.getShard());
+            info(String.format("Removed room %s", room.getName()));
+        }
     }
 
     /**
+     * Cluster mode: lists (or stops listing) a room owned by another node
      * 
-     * <p>
-     * Note: Not a common use-case; just updated for example sake.
-     * </p>
-     * Relays the message from the sender to all rooms
-     * Adding the synchronized keyword ensures that only one thread can execute
-     * these methods at a time,
-     * preventing concurrent modification issues and ensuring thread safety
+     * @param name
+     * @param exists
+     */
+    protected void indexRemoteRoom(String name, boolean exists) {
+        if (exists) {
+            roomIndex.add(name);
+        } else {
+            roomIndex.remove(name);
+        }
+    }
+
+    /**
+     * Cluster mode: stops listing every room the filter matches (e.g. those of a
+     * lost node)
      * 
-     * @param message
-     * @param sender  ServerThread (client) sending the message or null if it's a
-     *                server-generated message
+     * @param filter gets the room name
      */
-    private synchronized void relayToAllRooms(ServerThread sender, String message) {
-        // Note: any desired changes to the message must be done before this line
-        String senderString = sender == null ? "Server" : sender.getDisplayName();
-        // Note: formattedMessage must be final (or effectively final) since outside
-        // scope can't changed inside a callback function (see removeIf() below)
-        final String formattedMessage = String.format("%s: %s", senderString, message);
-        // end temp identifier
+    protected void unindexRemoteRooms(Predicate<String> filter) {
+        roomIndex.removeIf(filter);
+    }
 
-        // loop over Rooms and send out the message
-        // Note: this uses a lambda expression for each item in the values() collection
+    /**
+     * @return names of the rooms hosted here, lobby excluded
+     */
+    protected List<String> getLocalRoomNames() {
+        List<String> names = new ArrayList<>();
+        for (Room room : rooms.values()) {
+            if (!Room.LOBBY.equalsIgnoreCase(room.getName())) {
+                names.add(room.getName());
+            }
+        }
+        return names;
+    }
 
-        rooms.values().forEach(room -> {
-            room.relay(sender, formattedMessage);
-        });
+    /**
+     * Looks up one page of room names starting with the prefix
+     * 
+     * @param prefix case-insensitive, blank lists every room
+     * @param offset
+     * @param limit  0 (or less) uses the default page size; capped at
+     *               MAX_ROOM_PAGE
+     * @return
+     */
+    protected RoomIndex.Page listRooms(String prefix, int offset, int limit) {
+        int pageSize = limit <= 0 ? DEFAULT_ROOM_PAGE : Math.min(limit, MAX_ROOM_PAGE);
+        return roomIndex.find(prefix, offset, pageSize);
+    }
+
+    /**
+     * Queues an already encoded announcement in every local room; each room
+     * sends it from its own mailbox, so rooms on different shards deliver in
+     * parallel (bounded by the shard count) and the caller never waits. The
+     * time until the last room has queued it is recorded in BroadcastStats.
+     * 
+     * @param frame
+     */
+    protected void relayToAllRooms(SharedFrame frame) {
+        long start = System.nanoTime();
+        List<Room> targets = new ArrayList<>(rooms.values());
+        if (targets.isEmpty()) {
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(targets.size());
+        for (Room room : targets) {
+            room.announce(frame, () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    BroadcastStats.record(System.nanoTime() - start);
+                }
+            });
+        }
     }
 
     /**
-     * Used to send a message to all Rooms.
-     * This is just an example and we likely won't be using this
+     * Sends a message to every client in every room (on every node in cluster
+     * mode). The payload is encoded once and the same frame goes to everyone,
+     * so unlike Room.relay() it carries no room name.
      * 
-     * @param sender
+     * @param sender  ServerThread (client) sending the message or null if it's a
+     *                server-generated message
      * @param message
      */
-    public synchronized void broadcastMessageToAllRooms(ServerThread sender, String message) {
-        relayToAllRooms(sender, message);
+    public void broadcastMessageToAllRooms(ServerThread sender, String message) {
+        String senderString = sender == null ? "Server" : sender.getDisplayName();
+        long senderId = sender == null ? Constants.DEFAULT_CLIENT_ID : sender.getClientId();
+        SharedFrame frame;
+        try {
+            frame = SharedFrame.encode(
+                    ServerThread.buildMessage(senderId, String.format("%s: %s", senderString, message)));
+        } catch (IOException e) {
+            info("Unable to encode announcement: " + e.getMessage());
+            return;
+        }
+        Cluster current = cluster;
+        if (current != null) {
+            current.announce(frame.bytes());
+        }
+        relayToAllRooms(frame);
     }
 
     public static void main(String[] args) {
         System.out.println("Server Starting");
         Server server = Server.INSTANCE;
-        int port = 3000;
-        try {
-            port = Integer.parseInt(args[0]);
-        } catch (Exception e) {
-            // can ignore, will either be index out of bounds or type mismatch
-            // will default to the defined value prior to the try/catch
-        }
-        server.start(port);
+        // port (if any) and options are parsed here; anything invalid falls back to
+        // the defaults defined in ServerConfig
+        ServerConfig config = ServerConfig.fromArgs(args);
+        server.start(config);
         System.out.println("Server Stopped");
     }
 
@@ -0,0 +1,427 @@
+package Project.Server;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup options for the Server.
+ * <p>
+ * Usage: Server [port] [--transport=blocking|nio] [--nio-loops=N]
+ * [--threads=platform|virtual] [--outbound-capacity=N]
+ * [--overflow=drop_oldest|disconnect|block] [--overflow-timeout=ms]
+ * [--write-batching[=true|false]] [--flush-window=ms] [--stats-interval=seconds]
+ * [--heartbeat-interval=seconds] [--idle-timeout=seconds]
+ * [--log-level=trace|debug|info|warn|off] [--trace-sample=N] [--room-workers=N]
+ * [--presence-window=ms] [--large-room-threshold=N] [--shutdown-timeout=ms]
+ * [--node-id=name] [--cluster-nodes=name@host:port,...]
+ * [--cluster-secret=text] (defaults to the CLUSTER_SECRET environment variable)
+ * [--resume-grace=seconds] [--resume-buffer=N] [--park-window=seconds] [--park-capacity=N]
+ * [--max-connections=N] [--connect-rate=per-second] [--connect-burst=N]
+ * [--accept-backlog=N] [--admission=reject|pause]
+ * [--limit-chat=rate/burst] [--limit-pick=rate/burst] [--limit-room=rate/burst]
+ * [--limit-points=rate/burst] [--throttle=drop|delay|notice] [--throttle-max-delay=ms]
+ * </p>
+ * The first bare argument is still treated as the port so existing launch
+ * scripts keep working.
+ */
+public class ServerConfig {
+    public enum Transport {
+        BLOCKING, // one thread per client (original behavior)
+        NIO // a few selector loops shared by all clients
+    }
+
+    public enum ThreadMode {
+        PLATFORM, // one OS thread per blocking connection, writers share a pool
+        VIRTUAL // one virtual thread per blocking connection
+    }
+
+    /**
+     * What to do when a client's outbound queue is full
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST, // discard the stalest queued frame to make room
+        DISCONNECT, // the client can't keep up, drop it
+        BLOCK // make the sender wait (up to the overflow timeout), then disconnect
+    }
+
+    /**
+     * What the accept loop does once --max-connections is reached
+     */
+    public enum AdmissionPolicy {
+        REJECT, // accept and close at once
+        PAUSE // stop accepting; new connections wait in the listen backlog
+    }
+
+    /**
+     * What happens to a client's payload once its rate limit is used up
+     */
+    public enum ThrottlePolicy {
+        DROP, // ignore it
+        DELAY, // stop reading from the client until it's allowed (up to the max delay), else drop
+        NOTICE // ignore it and tell the client once per burst of excess
+    }
+
+    /**
+     * Payloads per second and how many may come back to back; written as
+     * rate/burst on the command line, 0 turns the limit off
+     */
+    public static final class RateLimit {
+        public static final RateLimit NONE = new RateLimit(0, 0);
+
+        private final double rate;
+        private final int burst;
+
+        public RateLimit(double rate, int burst) {
+            this.rate = Math.max(0, rate);
+            this.burst = Math.max(1, burst);
+        }
+
+        public double getRate() { return rate; }
+        public int getBurst() { return burst; }
+
+        public boolean isLimited() {
+            return rate > 0;
+        }
+
+        /**
+         * @param value rate/burst, or just rate (burst then equals the rate)
+         * @return
+         */
+        public static RateLimit parse(String value) {
+            String[] parts = value.split("/", 2);
+            double rate = Double.parseDouble(parts[0].trim());
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.ceil(rate);
+            return rate > 0 ? new RateLimit(rate, burst) : NONE;
+        }
+
+        @Override
+        public String toString() {
+            return isLimited() ? rate + "/" + burst : "off";
+        }
+    }
+
+    private int port = 3000;
+    private Transport transport = Transport.BLOCKING;
+    private int nioLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private ThreadMode threadMode = ThreadMode.PLATFORM;
+    private int outboundCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DISCONNECT;
+    private long overflowTimeoutMillis = 250;
+    private boolean writeBatching = false;
+    private long flushWindowMillis = 0;
+    private int statsIntervalSeconds = 0;
+    private int heartbeatIntervalSeconds = 10; // 0 disables PINGs
+    private int idleTimeoutSeconds = 30; // 0 never reaps silent clients
+    private ServerLog.Level logLevel = ServerLog.Level.INFO;
+    private int traceSampleRate = 1;
+    private int roomWorkers = Runtime.getRuntime().availableProcessors(); // room shard loops
+    private long presenceWindowMillis = 100; // 0 flushes on the room's next mailbox turn
+    private int largeRoomThreshold = 0; // members at which rosters become paged, 0 never
+    private long shutdownTimeoutMillis = 5000; // overall deadline for the shutdown drain
+    private String nodeId = null;
+    private Map<String, InetSocketAddress> clusterNodes = Collections.emptyMap(); // empty runs standalone
+    private String clusterSecret = System.getenv("CLUSTER_SECRET"); // shared by every node, tcp bus only
+    private int resumeGraceSeconds = 30; // how long a dropped session can be resumed, 0 never
+    private int resumeBufferFrames = 256; // frames held for a parked session before it needs a resync
+    private int parkWindowSeconds = 3600; // off-heap parking after the resume grace, 0 never
+    private int parkCapacity = 100_000; // off-heap parked sessions held at once
+    private int maxConnections = 10_000; // open client connections, 0 unlimited
+    private double connectRate = 20; // new connections per second per source address, 0 unlimited
+    private int connectBurst = 40; // connections a source address may open back to back
+    private int acceptBacklog = 128; // listen queue length
+    private AdmissionPolicy admissionPolicy = AdmissionPolicy.REJECT;
+    // inbound payloads per client
+    private RateLimit chatLimit = new RateLimit(5, 10); // MESSAGE, REVERSE
+    private RateLimit pickLimit = new RateLimit(4, 8); // CHOICE_PICKED, READY
+    private RateLimit roomLimit = new RateLimit(2, 5); // create/join/leave, room lists, roster pages
+    private RateLimit pointsLimit = new RateLimit(2, 4); // POINTS_SYNC
+    private ThrottlePolicy throttlePolicy = ThrottlePolicy.NOTICE;
+    private long throttleMaxDelayMillis = 1000;
+
+    public int getPort() { return port; }
+    public void setPort(int port) { this.port = port; }
+
+    public Transport getTransport() { return transport; }
+    public void setTransport(Transport transport) { this.transport = transport; }
+
+    public int getNioLoops() { return nioLoops; }
+    public void setNioLoops(int nioLoops) { this.nioLoops = Math.max(1, nioLoops); }
+
+    public ThreadMode getThreadMode() { return threadMode; }
+    public void setThreadMode(ThreadMode threadMode) { this.threadMode = threadMode; }
+
+    public int getOutboundCapacity() { return outboundCapacity; }
+    public void setOutboundCapacity(int outboundCapacity) { this.outboundCapacity = Math.max(1, outboundCapacity); }
+
+    public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) { this.overflowPolicy = overflowPolicy; }
+
+    public boolean isWriteBatching() { return writeBatching; }
+    public void setWriteBatching(boolean writeBatching) { this.writeBatching = writeBatching; }
+
+    public long getFlushWindowMillis() { return flushWindowMillis; }
+    public void setFlushWindowMillis(long flushWindowMillis) { this.flushWindowMillis = Math.max(0, flushWindowMillis); }
+
+    public int getStatsIntervalSeconds() { return statsIntervalSeconds; }
+    public void setStatsIntervalSeconds(int statsIntervalSeconds) {
+        this.statsIntervalSeconds = Math.max(0, statsIntervalSeconds);
+    }
+
+    public int getHeartbeatIntervalSeconds() { return heartbeatIntervalSeconds; }
+    public void setHeartbeatIntervalSeconds(int heartbeatIntervalSeconds) {
+        this.heartbeatIntervalSeconds = Math.max(0, heartbeatIntervalSeconds);
+    }
+
+    public int getIdleTimeoutSeconds() { return idleTimeoutSeconds; }
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = Math.max(0, idleTimeoutSeconds);
+    }
+
+    public ServerLog.Level getLogLevel() { return logLevel; }
+    public void setLogLevel(ServerLog.Level logLevel) { this.logLevel = logLevel; }
+
+    public int getTraceSampleRate() { return traceSampleRate; }
+    public void setTraceSampleRate(int traceSampleRate) { this.traceSampleRate = Math.max(1, traceSampleRate); }
+
+    public int getRoomWorkers() { return roomWorkers; }
+    public void setRoomWorkers(int roomWorkers) { this.roomWorkers = Math.max(1, roomWorkers); }
+
+    public long getPresenceWindowMillis() { return presenceWindowMillis; }
+    public void setPresenceWindowMillis(long presenceWindowMillis) {
+        this.presenceWindowMillis = Math.max(0, presenceWindowMillis);
+    }
+
+    public int getLargeRoomThreshold() { return largeRoomThreshold; }
+    public void setLargeRoomThreshold(int largeRoomThreshold) { this.largeRoomThreshold = Math.max(0, largeRoomThreshold); }
+
+    public long getShutdownTimeoutMillis() { return shutdownTimeoutMillis; }
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = Math.max(0, shutdownTimeoutMillis);
+    }
+
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+    public Map<String, InetSocketAddress> getClusterNodes() { return clusterNodes; }
+    public void setClusterNodes(Map<String, InetSocketAddress> clusterNodes) { this.clusterNodes = clusterNodes; }
+
+    public String getClusterSecret() { return clusterSecret; }
+    public void setClusterSecret(String clusterSecret) { this.clusterSecret = clusterSecret; }
+
+    public int getResumeGraceSeconds() { return resumeGraceSeconds; }
+    public void setResumeGraceSeconds(int resumeGraceSeconds) { this.resumeGraceSeconds = Math.max(0, resumeGraceSeconds); }
+
+    public int getResumeBufferFrames() { return resumeBufferFrames; }
+    public void setResumeBufferFrames(int resumeBufferFrames) { this.resumeBufferFrames = Math.max(0, resumeBufferFrames); }
+
+    public int getParkWindowSeconds() { return parkWindowSeconds; }
+    public void setParkWindowSeconds(int parkWindowSeconds) { this.parkWindowSeconds = Math.max(0, parkWindowSeconds); }
+
+    public int getParkCapacity() { return parkCapacity; }
+    public void setParkCapacity(int parkCapacity) { this.parkCapacity = Math.max(1, parkCapacity); }
+
+    public int getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(int maxConnections) { this.maxConnections = Math.max(0, maxConnections); }
+
+    public double getConnectRate() { return connectRate; }
+    public void setConnectRate(double connectRate) { this.connectRate = Math.max(0, connectRate); }
+
+    public int getConnectBurst() { return connectBurst; }
+    public void setConnectBurst(int connectBurst) { this.connectBurst = Math.max(1, connectBurst); }
+
+    public int getAcceptBacklog() { return acceptBacklog; }
+    public void setAcceptBacklog(int acceptBacklog) { this.acceptBacklog = Math.max(1, acceptBacklog); }
+
+    public AdmissionPolicy getAdmissionPolicy() { return admissionPolicy; }
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) { this.admissionPolicy = admissionPolicy; }
+
+    public RateLimit getChatLimit() { return chatLimit; }
+    public void setChatLimit(RateLimit chatLimit) { this.chatLimit = chatLimit; }
+
+    public RateLimit getPickLimit() { return pickLimit; }
+    public void setPickLimit(RateLimit pickLimit) { this.pickLimit = pickLimit; }
+
+    public RateLimit getRoomLimit() { return roomLimit; }
+    public void setRoomLimit(RateLimit roomLimit) { this.roomLimit = roomLimit; }
+
+    public RateLimit getPointsLimit() { return pointsLimit; }
+    public void setPointsLimit(RateLimit pointsLimit) { this.pointsLimit = pointsLimit; }
+
+    public ThrottlePolicy getThrottlePolicy() { return throttlePolicy; }
+    public void setThrottlePolicy(ThrottlePolicy throttlePolicy) { this.throttlePolicy = throttlePolicy; }
+
+    public long getThrottleMaxDelayMillis() { return throttleMaxDelayMillis; }
+    public void setThrottleMaxDelayMillis(long throttleMaxDelayMillis) {
+        this.throttleMaxDelayMillis = Math.max(0, throttleMaxDelayMillis);
+    }
+
+    /**
+     * @return true if --cluster-nodes lists this node
+     */
+    public boolean isClustered() {
+        return nodeId != null && clusterNodes.containsKey(nodeId);
+    }
+
+    public long getOverflowTimeoutMillis() { return overflowTimeoutMillis; }
+    public void setOverflowTimeoutMillis(long overflowTimeoutMillis) {
+        this.overflowTimeoutMillis = Math.max(0, overflowTimeoutMillis);
+    }
+
+    /**
+     * Builds a config from command line arguments; bad values are reported and
+     * left at their defaults
+     *
+     * @param args
+     * @return
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (String arg : args) {
+            try {
+                if (!arg.startsWith("--")) {
+                    config.setPort(Integer.parseInt(arg));
+                    continue;
+                }
+                String[] parts = arg.substring(2).split("=", 2);
+                String key = parts[0].toLowerCase();
+                String value = parts.length > 1 ? parts[1].trim() : "";
+                switch (key) {
+                    case "transport":
+                        config.setTransport(Transport.valueOf(value.toUpperCase()));
+                        break;
+                    case "nio-loops":
+                        config.setNioLoops(Integer.parseInt(value));
+                        break;
+                    case "threads":
+                        config.setThreadMode(ThreadMode.valueOf(value.toUpperCase()));
+                        break;
+                    case "outbound-capacity":
+                        config.setOutboundCapacity(Integer.parseInt(value));
+                        break;
+                    case "overflow":
+                        config.setOverflowPolicy(OverflowPolicy.valueOf(value.toUpperCase()));
+                        break;
+                    case "overflow-timeout":
+                        config.setOverflowTimeoutMillis(Long.parseLong(value));
+                        break;
+                    case "write-batching":
+                        config.setWriteBatching(value.isEmpty() || Boolean.parseBoolean(value));
+                        break;
+                    case "flush-window":
+                        config.setFlushWindowMillis(Long.parseLong(value));
+                        break;
+                    case "stats-interval":
+                        config.setStatsIntervalSeconds(Integer.parseInt(value));
+                        break;
+                    case "heartbeat-interval":
+                        config.setHeartbeatIntervalSeconds(Integer.parseInt(value));
+                        break;
+                    case "idle-timeout":
+                        config.setIdleTimeoutSeconds(Integer.parseInt(value));
+                        break;
+                    case "log-level":
+                        config.setLogLevel(ServerLog.Level.valueOf(value.toUpperCase()));
+                        break;
+                    case "trace-sample":
+                        config.setTraceSampleRate(Integer.parseInt(value));
+                        break;
+                    case "room-workers":
+                        config.setRoomWorkers(Integer.parseInt(value));
+                        break;
+                    case "presence-window":
+                        config.setPresenceWindowMillis(Long.parseLong(value));
+                        break;
+                    case "large-room-threshold":
+                        config.setLargeRoomThreshold(Integer.parseInt(value));
+                        break;
+                    case "shutdown-timeout":
+                        config.setShutdownTimeoutMillis(Long.parseLong(value));
+                        break;
+                    case "node-id":
+                        config.setNodeId(value.isEmpty() ? null : value);
+                        break;
+                    case "cluster-nodes":
+                        config.setClusterNodes(parseNodes(value));
+                        break;
+                    case "cluster-secret":
+                        config.setClusterSecret(value);
+                        break;
+                    case "resume-grace":
+                        config.setResumeGraceSeconds(Integer.parseInt(value));
+                        break;
+                    case "resume-buffer":
+                        config.setResumeBufferFrames(Integer.parseInt(value));
+                        break;
+                    case "park-window":
+                        config.setParkWindowSeconds(Integer.parseInt(value));
+                        break;
+                    case "park-capacity":
+                        config.setParkCapacity(Integer.parseInt(value));
+                        break;
+                    case "max-connections":
+                        config.setMaxConnections(Integer.parseInt(value));
+                        break;
+                    case "connect-rate":
+                        config.setConnectRate(Double.parseDouble(value));
+                        break;
+                    case "connect-burst":
+                        config.setConnectBurst(Integer.parseInt(value));
+                        break;
+                    case "accept-backlog":
+                        config.setAcceptBacklog(Integer.parseInt(value));
+                        break;
+                    case "admission":
+                        config.setAdmissionPolicy(AdmissionPolicy.valueOf(value.toUpperCase()));
+                        break;
+                    case "limit-chat":
+                        config.setChatLimit(RateLimit.parse(value));
+                        break;
+                    case "limit-pick":
+                        config.setPickLimit(RateLimit.parse(value));
+                        break;
+                    case "limit-room":
+                        config.setRoomLimit(RateLimit.parse(value));
+                        break;
+                    case "limit-points":
+                        config.setPointsLimit(RateLimit.parse(value));
+                        break;
+                    case "throttle":
+                        config.setThrottlePolicy(ThrottlePolicy.valueOf(value.toUpperCase()));
+                        break;
+                    case "throttle-max-delay":
+                        config.setThrottleMaxDelayMillis(Long.parseLong(value));
+                        break;
+                    default:
+                        System.out.println("Ignoring unknown option " + arg);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException too
+                System.out.println("Ignoring invalid option " + arg);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @param value name@host:port entries separated by commas; the order is
+     *              kept (a node's position partitions the client ids)
+     * @return
+     */
+    private static Map<String, InetSocketAddress> parseNodes(String value) {
+        Map<String, InetSocketAddress> nodes = new LinkedHashMap<>();
+        for (String entry : value.split(",")) {
+            String[] idAddress = entry.trim().split("@", 2);
+            int colon = idAddress.length < 2 ? -1 : idAddress[1].lastIndexOf(':');
+            if (colon < 0 || idAddress[0].isBlank()) {
+                throw new IllegalArgumentException("Expected name@host:port but got " + entry);
+            }
+            String host = idAddress[1].substring(0, colon);
+            int port = Integer.parseInt(idAddress[1].substring(colon + 1));
+            nodes.put(idAddress[0].trim(), new InetSocketAddress(host, port));
+        }
+        return Collections.unmodifiableMap(nodes);
+    }
+}
@@ -0,0 +1,76 @@
+package Project.Server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import Project.Common.TextFX;
+import Project.Common.TextFX.Color;
+
+/**
+ * Leveled console logging for the server classes.
+ * <p>
+ * Messages are passed as Suppliers so a disabled level costs a field read and
+ * a branch: no String.format, no colorize and no payload toString(). TRACE is
+ * meant for per-message logs (every send/receive) and can additionally be
+ * sampled so only 1 in N of them is printed.
+ * </p>
+ */
+public final class ServerLog {
+    public enum Level {
+        TRACE, // every payload sent/received
+        DEBUG, // per-event details (relays, recipient counts)
+        INFO, // connection and room lifecycle (default)
+        WARN, // recoverable problems
+        OFF
+    }
+
+    private static volatile Level level = Level.INFO;
+    private static volatile int traceSampleRate = 1; // 1 logs every trace message
+
+    private ServerLog() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static void setLevel(Level level) {
+        ServerLog.level = level;
+    }
+
+    public static int getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    /**
+     * @param rate log 1 out of every rate TRACE messages (1 logs all of them)
+     */
+    public static void setTraceSampleRate(int rate) {
+        ServerLog.traceSampleRate = Math.max(1, rate);
+    }
+
+    public static boolean isEnabled(Level check) {
+        return check.ordinal() >= level.ordinal() && check != Level.OFF;
+    }
+
+    /**
+     * Prints the message if the level is enabled (and, for TRACE, if this one
+     * was sampled)
+     *
+     * @param check
+     * @param color
+     * @param message only evaluated when the message will actually be printed
+     */
+    public static void log(Level check, Color color, Supplier<String> message) {
+        if (!isEnabled(check)) {
+            return;
+        }
+        if (check == Level.TRACE) {
+            int rate = traceSampleRate;
+            if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+                return;
+            }
+        }
+        System.out.println(TextFX.colorize(message.get(), color));
+    }
+}
@@ -1,14 +1,19 @@
 package Project.Server;
 
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import Project.Common.ConnectionPayload;
 import Project.Common.Constants;
+import Project.Common.HeartbeatPayload;
 import Project.Common.Payload;
 import Project.Common.PayloadType;
 import Project.Common.RoomAction;
+import Project.Common.RoomResultPayload;
+import Project.Common.RosterPayload;
 import Project.Common.TextFX;
 import Project.Common.TextFX.Color;
 
@@ -17,9 +22,15 @@ import Project.Common.TextFX.Color;
  */
 public class ServerThread extends BaseServerThread {
     private Consumer<ServerThread> onInitializationComplete; // callback to inform when this object is ready
+    private static final int MAX_HELD = 64; // payloads kept behind a delayed one
+    private final InboundLimiter limiter; // null when another node already limits the client
+    // payloads waiting for their turn while one is delayed by the limiter
+    // (reader thread only); the head's token is already reserved
+    private final ArrayDeque<Payload> held = new ArrayDeque<>();
 
-    protected void info(String message) {
-        System.out.println(TextFX.colorize(String.format("Thread[%s]: %s", this.getClientId(), message), Color.CYAN));
+    @Override
+    protected void log(ServerLog.Level level, Supplier<String> message) {
+        ServerLog.log(level, Color.CYAN, () -> String.format("Thread[%s]: %s", this.getClientId(), message.get()));
     }
 
     protected ServerThread(Socket myClient, Consumer<ServerThread> onInitializationComplete) {
@@ -28,34 +39,41 @@ public class ServerThread extends BaseServerThread {
         info("ServerThread created");
         this.client = myClient;
         this.onInitializationComplete = onInitializationComplete;
+        this.limiter = new InboundLimiter(Server.INSTANCE.getConfig());
     }
 
-    // Start Send*() Methods
-//lsl8 | 12/08/25 Round Start Message
-    protected boolean sendRoundStart(String msg) {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.ROUND_START);
-        p.setClientId(Constants.DEFAULT_CLIENT_ID);
-        p.setMessage(msg);
-        return sendToClient(p);
+    /**
+     * Used by the NIO transport; the connection is already established and run()
+     * is never executed
+     * 
+     * @param connection
+     * @param onInitializationComplete
+     */
+    protected ServerThread(ClientConnection connection, Consumer<ServerThread> onInitializationComplete) {
+        this(connection, onInitializationComplete, new InboundLimiter(Server.INSTANCE.getConfig()));
     }
 
-    protected boolean sendDisconnect(long clientId) {
-        Payload payload = new Payload();
-        payload.setClientId(clientId);
-        payload.setPayloadType(PayloadType.DISCONNECT);
-        return sendToClient(payload);
-    }
-
-    protected boolean sendResetUserList() {
-        return sendClientInfo(Constants.DEFAULT_CLIENT_ID, null, RoomAction.JOIN);
+    /**
+     * @param connection
+     * @param onInitializationComplete
+     * @param limiter                  null to dispatch every payload as is
+     */
+    protected ServerThread(ClientConnection connection, Consumer<ServerThread> onInitializationComplete,
+            InboundLimiter limiter) {
+        Objects.requireNonNull(connection, "Client connection cannot be null");
+        Objects.requireNonNull(onInitializationComplete, "callback cannot be null");
+        info("ServerThread created for " + connection.getRemoteAddress());
+        this.connection = connection;
+        this.onInitializationComplete = onInitializationComplete;
+        this.limiter = limiter;
     }
 
-    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action) {
-        return sendClientInfo(clientId, clientName, action, false);
-    }
+    // Start Build*() Methods
+    // Note: static so Rooms can build a payload once and broadcast the encoded
+    // bytes to every member
 
-    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action, boolean isSync) {
+    protected static ConnectionPayload buildClientInfo(long clientId, String clientName, RoomAction action,
+            boolean isSync) {
         ConnectionPayload payload = new ConnectionPayload();
         switch (action) {
             case JOIN:
@@ -72,6 +90,71 @@ public class ServerThread extends BaseServerThread {
         }
         payload.setClientId(clientId);
         payload.setClientName(clientName);
+        return payload;
+    }
+
+    protected static Payload buildMessage(long clientId, String message) {
+        Payload payload = new Payload();
+        payload.setPayloadType(PayloadType.MESSAGE);
+        payload.setMessage(message);
+        payload.setClientId(clientId);
+        return payload;
+    }
+
+    /**
+     * Server generated game event (round start, notices, battle results, game
+     * over)
+     */
+    protected static Payload buildGameEvent(PayloadType payloadType, String message) {
+        Payload p = new Payload();
+        p.setPayloadType(payloadType);
+        p.setClientId(Constants.DEFAULT_CLIENT_ID);
+        p.setMessage(message);
+        return p;
+    }
+    // End Build*() Methods
+
+    // Start Send*() Methods
+//lsl8 | 12/08/25 Round Start Message
+    protected boolean sendRoundStart(String msg) {
+        return sendToClient(buildGameEvent(PayloadType.ROUND_START, msg));
+    }
+
+    protected boolean sendDisconnect(long clientId) {
+        Payload payload = new Payload();
+        payload.setClientId(clientId);
+        payload.setPayloadType(PayloadType.DISCONNECT);
+        return sendToClient(payload);
+    }
+
+    protected boolean sendResetUserList() {
+        return sendClientInfo(Constants.DEFAULT_CLIENT_ID, null, RoomAction.JOIN);
+    }
+
+    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action) {
+        return sendClientInfo(clientId, clientName, action, false);
+    }
+
+    protected boolean sendClientInfo(long clientId, String clientName, RoomAction action, boolean isSync) {
+        return sendToClient(buildClientInfo(clientId, clientName, action, isSync));
+    }
+
+    /**
+     * Sends one page of the room's members in one frame
+     * 
+     * @param clientIds
+     * @param clientNames same length as clientIds
+     * @param offset      position of the first entry; 0 replaces the client's
+     *                    list
+     * @param total       members in the room, not counting this client
+     * @return
+     */
+    protected boolean sendRoster(long[] clientIds, String[] clientNames, int offset, int total) {
+        RosterPayload payload = new RosterPayload();
+        payload.setPayloadType(PayloadType.ROSTER);
+        payload.setRoster(clientIds, clientNames);
+        payload.setOffset(offset);
+        payload.setTotal(total);
         return sendToClient(payload);
     }
 
@@ -80,62 +163,135 @@ public class ServerThread extends BaseServerThread {
         payload.setPayloadType(PayloadType.CLIENT_ID);
         payload.setClientId(getClientId());
         payload.setClientName(getClientName());
+        payload.setResumeToken(getResumeToken());
         return sendToClient(payload);
     }
 
     protected boolean sendMessage(long clientId, String message) {
-        Payload payload = new Payload();
-        payload.setPayloadType(PayloadType.MESSAGE);
-        payload.setMessage(message);
-        payload.setClientId(clientId);
-        return sendToClient(payload);
+        return sendToClient(buildMessage(clientId, message));
     }
 
     // lsl8 | 12/08/25 | Round Start Message
     protected boolean sendRoundStart() {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.ROUND_START);
-        p.setClientId(Constants.DEFAULT_CLIENT_ID);
-        p.setMessage("Round started! Make your pick with /pick r|p|s|l|k");
-        return sendToClient(p);
+        return sendRoundStart("Round started! Make your pick with /pick r|p|s|l|k");
     }
 
     protected boolean sendPickedNotice(String msg) {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.PICKED_NOTICE);
-        p.setClientId(Constants.DEFAULT_CLIENT_ID);
-        p.setMessage(msg);
-        return sendToClient(p);
+        return sendToClient(buildGameEvent(PayloadType.PICKED_NOTICE, msg));
     }
 
     protected boolean sendBattleResult(String msg) {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.BATTLE_RESULT);
-        p.setClientId(Constants.DEFAULT_CLIENT_ID);
-        p.setMessage(msg);
-        return sendToClient(p);
+        return sendToClient(buildGameEvent(PayloadType.BATTLE_RESULT, msg));
     }
 
     protected boolean sendGameOver(String msg) {
-        Payload p = new Payload();
-        p.setPayloadType(PayloadType.GAME_OVER);
-        p.setClientId(Constants.DEFAULT_CLIENT_ID);
-        p.setMessage(msg);
-        return sendToClient(p);
+        return sendToClient(buildGameEvent(PayloadType.GAME_OVER, msg));
+    }
+
+    protected boolean sendRoomList(String prefix, RoomIndex.Page page) {
+        RoomResultPayload payload = new RoomResultPayload();
+        payload.setPayloadType(PayloadType.ROOM_LIST);
+        payload.setRooms(page.rooms);
+        payload.setOffset(page.offset);
+        payload.setTotal(page.total);
+        if (!page.rooms.isEmpty()) {
+            payload.setMessage(String.format("Rooms %s-%s of %s", page.offset + 1, page.offset + page.rooms.size(),
+                    page.total));
+        }
+        return sendToClient(payload);
+    }
+
+    protected boolean sendPong(long sequence) {
+        HeartbeatPayload payload = new HeartbeatPayload();
+        payload.setPayloadType(PayloadType.PONG);
+        payload.setSequence(sequence);
+        return sendToClient(payload);
     }
 
     // End Send*() Methods
 
+    /**
+     * Checks the client's inbound rate limits first, so excess traffic costs
+     * this client's thread at most a notice instead of work in the Room
+     */
     @Override
     protected void processPayload(Payload incoming) {
+        if (limiter == null || InboundLimiter.categoryOf(incoming.getPayloadType()) == null) {
+            // connect, disconnect and heartbeats never wait behind throttled traffic
+            dispatchPayload(incoming);
+            return;
+        }
+        if (!held.isEmpty()) {
+            // keep arrival order behind the delayed payload
+            if (held.size() < MAX_HELD) {
+                held.add(incoming);
+            } else {
+                InboundLimiter.onDropped(incoming.getPayloadType());
+            }
+            return;
+        }
+        held.add(incoming);
+        releaseHeld(false);
+    }
+
+    /**
+     * Dispatches held payloads in order until one has to wait
+     * 
+     * @param headReserved true when the first one already has its token
+     */
+    private void releaseHeld(boolean headReserved) {
+        Payload next;
+        while ((next = held.peek()) != null) {
+            long wait = headReserved ? 0 : limiter.acquire(next.getPayloadType());
+            headReserved = false;
+            if (wait > 0) {
+                connection.suspendReads(wait, () -> releaseHeld(true));
+                return;
+            }
+            held.poll();
+            if (wait == 0) {
+                dispatchPayload(next);
+            } else if (limiter.shouldNotify(next.getPayloadType())) {
+                sendMessage(Constants.DEFAULT_CLIENT_ID, String.format("You're sending %s too fast; some were ignored",
+                        InboundLimiter.categoryOf(next.getPayloadType()).label));
+            }
+        }
+    }
+
+    private void dispatchPayload(Payload incoming) {
+        if (getRemoteNode() != null && Cluster.isForwarded(incoming.getPayloadType())) {
+            Server.INSTANCE.getCluster().forward(this, incoming);
+            return;
+        }
+        // in a room on another node there's no local Room; moving, creating and
+        // listing rooms go through the lobby's handlers
+        Room currentRoom = this.currentRoom != null ? this.currentRoom : Server.INSTANCE.getLobby();
 
         switch (incoming.getPayloadType()) {
-            case CLIENT_CONNECT:
-                setClientName(((ConnectionPayload) incoming).getClientName().trim());
+            case CLIENT_CONNECT: {
+                ConnectionPayload connect = (ConnectionPayload) incoming;
+                if (connect.getResumeToken() != null) {
+                    // a token only counts on the first CLIENT_CONNECT; an established
+                    // session can't swap itself for another one
+                    if (!isAwaitingSession()) {
+                        info("Ignoring a resume token from an established session");
+                        break;
+                    }
+                    if (Server.INSTANCE.resumeSession(this, connect.getResumeToken())) {
+                        break;
+                    }
+                }
+                // unknown or expired token: start a new session
+                setClientName(connect.getClientName().trim());
                 break;
+            }
 
             case DISCONNECT:
-                currentRoom.handleDisconnect(this);
+                if (this.currentRoom != null) {
+                    currentRoom.handleDisconnect(this);
+                } else {
+                    disconnect(); // also leaves a remote room
+                }
                 break;
 
             case MESSAGE: {
@@ -175,8 +331,10 @@ public class ServerThread extends BaseServerThread {
                         } else {
                             String roomName = parts[1].trim();
                             currentRoom.handleJoinRoom(this, roomName);
-                            if (currentRoom instanceof GameRoom) {
-                                ((GameRoom) currentRoom).handleSpectatorJoin(this);
+                            // the join moved us; the local still points at the room we left
+                            Room joined = this.currentRoom;
+                            if (joined instanceof GameRoom && joined.getName().equalsIgnoreCase(roomName)) {
+                                ((GameRoom) joined).handleSpectatorJoin(this);
                             } else {
                                 sendMessage(Constants.DEFAULT_CLIENT_ID,
                                         "Room " + roomName + " is not a game room.");
@@ -197,14 +355,7 @@ public class ServerThread extends BaseServerThread {
                     }
                 }
 
-                // Block chat messages from spectators
-                if (currentRoom instanceof GameRoom
-                        && ((GameRoom) currentRoom).isSpectator(getClientId())) {
-                    sendMessage(Constants.DEFAULT_CLIENT_ID,
-                            "Spectators can see chat but cannot send messages.");
-                    break;
-                }
-
+                // spectators are filtered by GameRoom.handleMessage()
                 currentRoom.handleMessage(this, msg);
                 break;
             }
@@ -225,6 +376,23 @@ public class ServerThread extends BaseServerThread {
                 currentRoom.handleJoinRoom(this, Room.LOBBY);
                 break;
 
+            case ROSTER:
+                if (incoming instanceof RosterPayload) {
+                    RosterPayload request = (RosterPayload) incoming;
+                    currentRoom.handleRosterPage(this, request.getOffset(), request.getLimit());
+                }
+                break;
+
+            case ROOM_LIST:
+                if (incoming instanceof RoomResultPayload) {
+                    RoomResultPayload request = (RoomResultPayload) incoming;
+                    currentRoom.handleListRooms(this, request.getMessage(), request.getOffset(),
+                            request.getLimit());
+                } else {
+                    currentRoom.handleListRooms(this, incoming.getMessage(), 0, 0);
+                }
+                break;
+
             case READY:
                 if (currentRoom instanceof GameRoom) {
                     ((GameRoom) currentRoom).handleReady(this);
@@ -247,12 +415,39 @@ public class ServerThread extends BaseServerThread {
                 }
                 break;
 
+            // heartbeats never touch the Room; the receive timestamp is already
+            // updated by onPayloadReceived()
+            case PING:
+                if (incoming instanceof HeartbeatPayload) {
+                    sendPong(((HeartbeatPayload) incoming).getSequence());
+                }
+                break;
+
+            case PONG:
+                if (incoming instanceof HeartbeatPayload) {
+                    onPong(((HeartbeatPayload) incoming).getSequence());
+                }
+                break;
+
             default:
                 System.out.println(TextFX.colorize("Unknown payload type received", Color.RED));
                 break;
         }
     }
 
+    /**
+     * A dropped connection parks the session (if resumption is enabled) instead
+     * of leaving the room; anything the server closes on purpose doesn't get
+     * here with isRunning still set
+     */
+    @Override
+    protected void onConnectionClosed() {
+        if (isRunning && !isParked() && Server.INSTANCE.parkSession(this)) {
+            return;
+        }
+        super.onConnectionClosed();
+    }
+
     @Override
     protected void onInitialized() {
         onInitializationComplete.accept(this);
@@ -0,0 +1,181 @@
+package Project.Server;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Server-wide index of initialized clients, independent of which Room holds
+ * them.
+ * <p>
+ * Lookups by id and by name are single hash probes with no lock. Names aren't
+ * unique (clients are told apart by name#id), so the name index maps the
+ * lowercase name to a copy-on-write array of every client using it.
+ * </p>
+ */
+class SessionDirectory {
+    private static final ServerThread[] NONE = new ServerThread[0];
+
+    private final AtomicLong lastClientId = new AtomicLong(0);
+    // cluster mode: node i of n only hands out ids i + 1, i + 1 + n, ... so
+    // ids stay unique across nodes
+    private volatile int partitionIndex = 0;
+    private volatile int partitionCount = 1;
+    private final ConcurrentHashMap<Long, Entry> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ServerThread[]> byName = new ConcurrentHashMap<>();
+    // parked sessions by resume token (they stay in byId until they expire)
+    private final ConcurrentHashMap<String, ServerThread> parked = new ConcurrentHashMap<>();
+
+    /**
+     * Remembers the name key used at registration so removal still works after
+     * the client's User has been reset
+     */
+    private static final class Entry {
+        final ServerThread client;
+        final String nameKey;
+
+        Entry(ServerThread client, String nameKey) {
+            this.client = client;
+            this.nameKey = nameKey;
+        }
+    }
+
+    /**
+     * @return a new, never reused, client id (starting at 1)
+     */
+    long nextClientId() {
+        return (lastClientId.incrementAndGet() - 1) * partitionCount + partitionIndex + 1;
+    }
+
+    /**
+     * Must be called before the first client id is handed out
+     *
+     * @param index this node's position in the cluster
+     * @param count nodes in the cluster
+     */
+    void partitionIds(int index, int count) {
+        partitionIndex = index;
+        partitionCount = count;
+    }
+
+    /**
+     * Indexes the client under its current id and name
+     *
+     * @param client
+     */
+    void register(ServerThread client) {
+        String nameKey = nameKey(client.getClientName());
+        Entry previous = byId.put(client.getClientId(), new Entry(client, nameKey));
+        if (previous != null) {
+            removeName(previous.nameKey, previous.client);
+        }
+        if (nameKey != null) {
+            byName.merge(nameKey, new ServerThread[] { client }, (current, added) -> {
+                ServerThread[] next = Arrays.copyOf(current, current.length + 1);
+                next[current.length] = added[0];
+                return next;
+            });
+        }
+    }
+
+    /**
+     * Removes the client if it's still the one registered under clientId;
+     * calling this more than once is harmless
+     *
+     * @param clientId
+     * @param client
+     */
+    void unregister(long clientId, BaseServerThread client) {
+        Entry entry = byId.get(clientId);
+        if (entry == null || entry.client != client || !byId.remove(clientId, entry)) {
+            return;
+        }
+        removeName(entry.nameKey, entry.client);
+    }
+
+    private void removeName(String nameKey, ServerThread client) {
+        if (nameKey == null) {
+            return;
+        }
+        byName.computeIfPresent(nameKey, (key, current) -> {
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == client) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return current;
+            }
+            if (current.length == 1) {
+                return null; // drops the mapping
+            }
+            ServerThread[] next = new ServerThread[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, next.length - index);
+            return next;
+        });
+    }
+
+    /**
+     * @param clientId
+     * @return the connected client or null
+     */
+    ServerThread get(long clientId) {
+        Entry entry = byId.get(clientId);
+        return entry == null ? null : entry.client;
+    }
+
+    /**
+     * @param name case-insensitive
+     * @return every connected client with that name (possibly none); don't
+     *         modify the array
+     */
+    ServerThread[] getByName(String name) {
+        String nameKey = nameKey(name);
+        ServerThread[] found = nameKey == null ? null : byName.get(nameKey);
+        return found == null ? NONE : found;
+    }
+
+    void park(String token, ServerThread client) {
+        parked.put(token, client);
+    }
+
+    /**
+     * Takes a parked session out so exactly one caller gets to resume or expire
+     * it
+     *
+     * @param token
+     * @return the parked thread or null if it's unknown or already claimed
+     */
+    ServerThread claimParked(String token) {
+        return parked.remove(token);
+    }
+
+    /**
+     * @param token
+     * @param client
+     * @return true if client was still parked under token (and now isn't)
+     */
+    boolean claimParked(String token, ServerThread client) {
+        return parked.remove(token, client);
+    }
+
+    int getParkedCount() {
+        return parked.size();
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void forEach(Consumer<ServerThread> action) {
+        byId.values().forEach(entry -> action.accept(entry.client));
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? null : name.trim().toLowerCase();
+    }
+}
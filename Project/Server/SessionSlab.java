@@ -0,0 +1,291 @@
+package Project.Server;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap store for sessions parked past the resume grace period (see
+ * Server.expireSession()).
+ * <p>
+ * By then the client has left its room, so all that's needed to restore it
+ * is a few fields: those live in fixed-size records in one direct buffer,
+ * found through an open-addressing index (also off-heap) keyed by the resume
+ * token. Millions of parked sessions therefore cost no Java objects at all,
+ * nothing for the GC to trace, and a restore is one hash probe and a record
+ * read.
+ * </p>
+ * 
+ * <pre>
+ * record (160 bytes):
+ *   0 clientId        8 expiresAt (epoch ms, 0 = free)   16 lastDelivered
+ *  24 tokenHash      32 gameFlags   36 points   40 gameSession
+ *  44 token (24 bytes ASCII)
+ *  68 name (length byte + 31 bytes UTF-8)
+ * 100 room key (length byte + 59 bytes UTF-8)
+ * </pre>
+ */
+final class SessionSlab {
+    private static final int RECORD_SIZE = 160;
+    private static final int CLIENT_ID = 0;
+    private static final int EXPIRES_AT = 8;
+    private static final int LAST_DELIVERED = 16;
+    private static final int TOKEN_HASH = 24;
+    private static final int GAME_FLAGS = 32;
+    private static final int POINTS = 36;
+    private static final int GAME_SESSION = 40;
+    private static final int TOKEN = 44;
+    private static final int TOKEN_SIZE = 24; // Server.newResumeToken(): 18 random bytes, base64
+    private static final int NAME = 68;
+    private static final int NAME_SIZE = 31;
+    private static final int ROOM = 100;
+    private static final int ROOM_SIZE = 59;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE;
+
+    private final int capacity;
+    private final ByteBuffer records;
+    private final IntBuffer index; // slot + 1 per bucket, 0 = empty
+    private final int indexMask;
+    private final IntBuffer freeSlots; // stack of unused slots
+    private int freeCount;
+    private int sweepCursor = 0;
+    private long stored = 0;
+    private long restored = 0;
+    private long expired = 0;
+    private long rejectedFull = 0;
+    private long rejectedTooLong = 0; // name or room key over NAME_SIZE / ROOM_SIZE bytes
+
+    /**
+     * What's kept for one parked session
+     */
+    static final class Record {
+        final long clientId;
+        final String clientName;
+        final String roomKey; // null restores into the lobby
+        final int gameFlags;
+        final int points;
+        final int gameSession;
+        final long lastDelivered;
+
+        Record(long clientId, String clientName, String roomKey, int gameFlags, int points, int gameSession,
+                long lastDelivered) {
+            this.clientId = clientId;
+            this.clientName = clientName;
+            this.roomKey = roomKey;
+            this.gameFlags = gameFlags;
+            this.points = points;
+            this.gameSession = gameSession;
+            this.lastDelivered = lastDelivered;
+        }
+    }
+
+    /**
+     * @param capacity most sessions held at once; the buffers are allocated
+     *                 here, roughly capacity * 180 bytes in total
+     */
+    SessionSlab(int capacity) {
+        this.capacity = Math.max(1, Math.min(capacity, MAX_CAPACITY));
+        records = ByteBuffer.allocateDirect(this.capacity * RECORD_SIZE);
+        int buckets = Integer.highestOneBit(Math.max(2, this.capacity * 2 - 1)) << 1; // >= 2x capacity, power of 2
+        index = ByteBuffer.allocateDirect(buckets * Integer.BYTES).asIntBuffer();
+        indexMask = buckets - 1;
+        freeSlots = ByteBuffer.allocateDirect(this.capacity * Integer.BYTES).asIntBuffer();
+        for (int i = 0; i < this.capacity; i++) {
+            freeSlots.put(i, this.capacity - 1 - i); // hand out slot 0 first
+        }
+        freeCount = this.capacity;
+    }
+
+    /**
+     * @param token
+     * @param record
+     * @param expiresAt epoch millis
+     * @return false if the store is full or the fields don't fit a record
+     */
+    synchronized boolean put(String token, Record record, long expiresAt) {
+        byte[] tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+        byte[] name = record.clientName.getBytes(StandardCharsets.UTF_8);
+        byte[] room = record.roomKey == null ? new byte[0] : record.roomKey.getBytes(StandardCharsets.UTF_8);
+        if (tokenBytes.length != TOKEN_SIZE) {
+            return false;
+        }
+        if (name.length > NAME_SIZE || room.length > ROOM_SIZE) {
+            rejectedTooLong++;
+            return false;
+        }
+        if (freeCount == 0) {
+            rejectedFull++;
+            return false;
+        }
+        long hash = hash(tokenBytes);
+        if (find(tokenBytes, hash) >= 0) {
+            return false; // tokens are never reused
+        }
+        int slot = freeSlots.get(--freeCount);
+        int base = slot * RECORD_SIZE;
+        records.putLong(base + CLIENT_ID, record.clientId);
+        records.putLong(base + EXPIRES_AT, expiresAt);
+        records.putLong(base + LAST_DELIVERED, record.lastDelivered);
+        records.putLong(base + TOKEN_HASH, hash);
+        records.putInt(base + GAME_FLAGS, record.gameFlags);
+        records.putInt(base + POINTS, record.points);
+        records.putInt(base + GAME_SESSION, record.gameSession);
+        records.put(base + TOKEN, tokenBytes);
+        records.put(base + NAME, (byte) name.length);
+        records.put(base + NAME + 1, name);
+        records.put(base + ROOM, (byte) room.length);
+        records.put(base + ROOM + 1, room);
+
+        int bucket = (int) hash & indexMask;
+        while (index.get(bucket) != 0) {
+            bucket = (bucket + 1) & indexMask;
+        }
+        index.put(bucket, slot + 1);
+        stored++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the session parked under the token
+     *
+     * @param token
+     * @return the record or null if there's none (or it expired)
+     */
+    synchronized Record take(String token) {
+        byte[] tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+        if (tokenBytes.length != TOKEN_SIZE) {
+            return null;
+        }
+        int bucket = find(tokenBytes, hash(tokenBytes));
+        if (bucket < 0) {
+            return null;
+        }
+        int slot = index.get(bucket) - 1;
+        int base = slot * RECORD_SIZE;
+        boolean live = records.getLong(base + EXPIRES_AT) > System.currentTimeMillis();
+        Record record = live ? read(base) : null;
+        release(bucket, slot);
+        if (live) {
+            restored++;
+        } else {
+            expired++;
+        }
+        return record;
+    }
+
+    /**
+     * Frees expired records, looking at up to maxSlots slots per call (it
+     * carries on where the last call stopped)
+     *
+     * @param now      epoch millis
+     * @param maxSlots
+     * @return records freed
+     */
+    synchronized int sweep(long now, int maxSlots) {
+        int freed = 0;
+        for (int i = 0; i < Math.min(maxSlots, capacity); i++) {
+            int slot = sweepCursor;
+            sweepCursor = (sweepCursor + 1) % capacity;
+            int base = slot * RECORD_SIZE;
+            long expiresAt = records.getLong(base + EXPIRES_AT);
+            if (expiresAt != 0 && expiresAt <= now) {
+                int bucket = (int) records.getLong(base + TOKEN_HASH) & indexMask;
+                while (index.get(bucket) != slot + 1) {
+                    bucket = (bucket + 1) & indexMask;
+                }
+                release(bucket, slot);
+                expired++;
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    synchronized int size() {
+        return capacity - freeCount;
+    }
+
+    synchronized String summary() {
+        return String.format("offHeap=%s/%s stored=%s restored=%s expired=%s rejected[full=%s, tooLong=%s]",
+                capacity - freeCount, capacity, stored, restored, expired, rejectedFull, rejectedTooLong);
+    }
+
+    private Record read(int base) {
+        return new Record(records.getLong(base + CLIENT_ID), readString(base + NAME),
+                records.get(base + ROOM) == 0 ? null : readString(base + ROOM), records.getInt(base + GAME_FLAGS),
+                records.getInt(base + POINTS), records.getInt(base + GAME_SESSION),
+                records.getLong(base + LAST_DELIVERED));
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[records.get(offset)];
+        records.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the bucket holding the token or -1
+     */
+    private int find(byte[] token, long hash) {
+        int bucket = (int) hash & indexMask;
+        int entry;
+        while ((entry = index.get(bucket)) != 0) {
+            int base = (entry - 1) * RECORD_SIZE;
+            if (records.getLong(base + TOKEN_HASH) == hash && tokenEquals(base, token)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    private boolean tokenEquals(int base, byte[] token) {
+        for (int i = 0; i < TOKEN_SIZE; i++) {
+            if (records.get(base + TOKEN + i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Frees the slot and removes its bucket, shifting later entries of the same
+     * probe run back so lookups never stop at a hole
+     */
+    private void release(int bucket, int slot) {
+        records.putLong(slot * RECORD_SIZE + EXPIRES_AT, 0);
+        freeSlots.put(freeCount++, slot);
+        int hole = bucket;
+        int next = bucket;
+        while (true) {
+            next = (next + 1) & indexMask;
+            int entry = index.get(next);
+            if (entry == 0) {
+                break;
+            }
+            int home = (int) records.getLong((entry - 1) * RECORD_SIZE + TOKEN_HASH) & indexMask;
+            // move it into the hole unless its home lies cyclically in (hole, next]
+            boolean stays = hole <= next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!stays) {
+                index.put(hole, entry);
+                hole = next;
+            }
+        }
+        index.put(hole, 0);
+    }
+
+    /**
+     * 64-bit FNV-1a with a murmur finalizer
+     */
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,61 @@
+package Project.Server;
+
+import java.io.IOException;
+
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+
+/**
+ * A Payload encoded exactly once.
+ * <p>
+ * Broadcasts hand the same SharedFrame to every recipient; connections only
+ * ever read the bytes (NIO wraps them in a per-connection ByteBuffer), so one
+ * array safely backs any number of queued writes.
+ * </p>
+ */
+final class SharedFrame {
+    private final byte[] frame;
+    private final Payload payload; // kept for logging only, null for relayed frames
+
+    private SharedFrame(byte[] frame, Payload payload) {
+        this.frame = frame;
+        this.payload = payload;
+    }
+
+    /**
+     * Encodes the payload; the payload must not be modified afterwards
+     *
+     * @param payload
+     * @return
+     * @throws IOException if it can't fit in a frame
+     */
+    static SharedFrame encode(Payload payload) throws IOException {
+        return new SharedFrame(PayloadCodec.encode(payload), payload);
+    }
+
+    /**
+     * Wraps a frame encoded elsewhere (relayed from another cluster node)
+     *
+     * @param frame
+     * @return
+     */
+    static SharedFrame wrap(byte[] frame) {
+        return new SharedFrame(frame, null);
+    }
+
+    /**
+     * @return the encoded frame; callers must treat it as read-only
+     */
+    byte[] bytes() {
+        return frame;
+    }
+
+    int size() {
+        return frame.length;
+    }
+
+    @Override
+    public String toString() {
+        return payload == null ? String.format("Frame[%s bytes]", frame.length) : payload.toString();
+    }
+}
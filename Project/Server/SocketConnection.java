@@ -0,0 +1,318 @@
+package Project.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+
+/**
+ * Classic blocking socket connection; the owning ServerThread sits in
+ * readPayload() on its own thread while a writer drains the outbound queue.
+ * <p>
+ * On virtual threads the writer is a dedicated task per connection. On
+ * platform threads that would mean two OS threads per client, so instead each
+ * enqueue schedules a bounded drain on the shared writer pool (one at a time
+ * per connection, like a RoomMailbox). A drain never lingers for the flush
+ * window there, and a peer that stops reading holds one pool thread until its
+ * socket write fails.
+ * </p>
+ */
+class SocketConnection implements ClientConnection {
+    // markers are compared by identity, they're never written
+    private static final byte[] CLOSE_MARKER = new byte[0]; // tells the writer to finish up
+    private static final byte[] FLUSH_MARKER = new byte[0]; // wakes the writer after uncork()
+    private static final int MAX_BATCH = 64; // frames per drain before giving the shared pool back
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final OutboundQueue outbound;
+    private final boolean writeBatching;
+    private final long flushWindowNanos;
+    private final AtomicInteger corks = new AtomicInteger();
+    private volatile boolean closed = false;
+    // shared writer pool only (platform threads)
+    private final Executor writerExecutor;
+    private final boolean sharedWriter;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private boolean dirty = false; // bytes written since the last flush, drains only
+
+    SocketConnection(Socket socket, ServerConfig config, Executor writerExecutor) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream())));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outbound = new OutboundQueue(config);
+        this.writeBatching = config.isWriteBatching();
+        this.flushWindowNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushWindowMillis());
+        this.writerExecutor = writerExecutor;
+        this.sharedWriter = config.getThreadMode() == ServerConfig.ThreadMode.PLATFORM;
+        if (!sharedWriter) {
+            writerExecutor.execute(this::drainOutbound);
+        }
+    }
+
+    /**
+     * Blocks until a full frame arrives
+     *
+     * @return the decoded Payload
+     * @throws IOException
+     */
+    Payload readPayload() throws IOException {
+        return PayloadCodec.read(in);
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (!outbound.offer(frame, true)) {
+            throw new IOException(String.format("Outbound queue full (%s frames)", outbound.size()));
+        }
+        signalWriter();
+    }
+
+    @Override
+    public boolean tryWrite(byte[] frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (!outbound.offerIfRoom(frame)) {
+            return false;
+        }
+        signalWriter();
+        return true;
+    }
+
+    @Override
+    public void cork() {
+        if (writeBatching) {
+            corks.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void uncork() {
+        if (writeBatching && corks.decrementAndGet() == 0) {
+            // if the queue is full the writer is busy anyway and will flush when it
+            // catches up; offer() could evict a real frame (DROP_OLDEST) for the marker
+            if (outbound.offerIfRoom(FLUSH_MARKER)) {
+                signalWriter();
+            }
+        }
+    }
+
+    /**
+     * Writer loop, the only code that touches the output stream
+     */
+    private void drainOutbound() {
+        try {
+            boolean dirty = false; // bytes written since the last flush
+            while (true) {
+                byte[] frame = outbound.take();
+                if (frame == CLOSE_MARKER) {
+                    break;
+                }
+                dirty |= writeFrame(frame);
+                if (writeBatching) {
+                    // coalesce whatever else is already waiting (optionally lingering for
+                    // more) into the same flush
+                    long deadline = System.nanoTime() + flushWindowNanos;
+                    while ((frame = nextBatched(deadline)) != null && frame != CLOSE_MARKER) {
+                        dirty |= writeFrame(frame);
+                    }
+                    if (frame == CLOSE_MARKER) {
+                        break;
+                    }
+                    if (corks.get() > 0) {
+                        continue; // a room event is still producing, its uncork() flushes
+                    }
+                }
+                if (dirty) {
+                    out.flush();
+                    TransportStats.flushes.increment();
+                    dirty = false;
+                }
+            }
+            out.flush(); // anything queued before close()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // peer is gone; closing the socket also ends the reader's loop
+        } finally {
+            closed = true;
+            outbound.clear();
+            closeSocket();
+        }
+    }
+
+    /**
+     * Schedules a drain on the shared writer pool unless one is already pending
+     */
+    private void signalWriter() {
+        if (!sharedWriter || !drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            writerExecutor.execute(this::drainAvailable);
+        } catch (RejectedExecutionException e) {
+            // shutting down, nothing will write for us anymore
+            closeSocket();
+        }
+    }
+
+    /**
+     * Shared pool drain: writes what's queued (up to MAX_BATCH frames) without
+     * ever waiting for more, then hands the thread back
+     */
+    private void drainAvailable() {
+        boolean finished = false;
+        try {
+            byte[] frame;
+            int count = 0;
+            while (count++ < MAX_BATCH && (frame = outbound.poll()) != null) {
+                if (frame == CLOSE_MARKER) {
+                    finished = true;
+                    break;
+                }
+                dirty |= writeFrame(frame);
+                if (!writeBatching) {
+                    flushIfDirty();
+                }
+            }
+            // a room event that's still producing flushes from its uncork()
+            if (finished || corks.get() == 0) {
+                flushIfDirty();
+            }
+        } catch (IOException e) {
+            finished = true; // peer is gone; closing the socket also ends the reader's loop
+        }
+        if (finished) {
+            // drainScheduled stays set so nothing is scheduled after the close
+            closed = true;
+            outbound.clear();
+            closeSocket();
+            return;
+        }
+        drainScheduled.set(false);
+        // something may have been queued after the last poll (or we hit the batch
+        // limit)
+        if (outbound.size() > 0) {
+            signalWriter();
+        }
+    }
+
+    private void flushIfDirty() throws IOException {
+        if (dirty) {
+            out.flush();
+            TransportStats.flushes.increment();
+            dirty = false;
+        }
+    }
+
+    private byte[] nextBatched(long deadline) throws InterruptedException {
+        byte[] frame = outbound.poll();
+        if (frame != null || flushWindowNanos == 0) {
+            return frame;
+        }
+        long remaining = deadline - System.nanoTime();
+        return remaining > 0 ? outbound.poll(remaining, TimeUnit.NANOSECONDS) : null;
+    }
+
+    /**
+     * @return true if bytes were written (markers write nothing)
+     */
+    private boolean writeFrame(byte[] frame) throws IOException {
+        if (frame == FLUSH_MARKER) {
+            return false;
+        }
+        out.write(frame);
+        TransportStats.framesWritten.increment();
+        TransportStats.bytesWritten.add(frame.length);
+        return true;
+    }
+
+    @Override
+    public void suspendReads(long delayMillis, Runnable onResume) {
+        // the caller is the reader thread, so holding it is what stops the reads
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!closed) {
+            onResume.run();
+        }
+    }
+
+    @Override
+    public int getPendingFrames() {
+        return outbound.size();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            socket.shutdownInput(); // unblocks readPayload() while queued frames still go out
+        } catch (IOException e) {
+            // already closed
+        }
+        if (!outbound.offer(CLOSE_MARKER, false)) {
+            // writer is hopelessly behind, don't wait for it
+            closeSocket();
+            return;
+        }
+        signalWriter();
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * Counts the writes that actually reach the socket
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            TransportStats.socketWrites.increment();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            TransportStats.socketWrites.increment();
+            out.write(b, off, len);
+        }
+    }
+}
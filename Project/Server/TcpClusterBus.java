@@ -0,0 +1,389 @@
+package Project.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import Project.Common.TextFX.Color;
+import Project.Server.ServerConfig.OverflowPolicy;
+
+/**
+ * ClusterBus over plain TCP: every node listens on its own bus address and
+ * opens one outbound connection per peer on first use. One connection (and one
+ * reader thread on the receiving side) per direction keeps messages ordered.
+ * <p>
+ * send() never touches a socket, so it's safe from the NIO loop and room
+ * shards: it queues the message for the peer's writer thread, which connects
+ * and writes. A node that can't be reached is reported down and sends to it
+ * fail fast for a backoff (doubling up to MAX_BACKOFF_MILLIS) before the next
+ * attempt.
+ * </p>
+ * <p>
+ * A connection only carries messages after a hello: the accepting node sends
+ * a random nonce and the connecting node answers with its id and an
+ * HMAC-SHA256 (keyed with the shared --cluster-secret) over the nonce and both
+ * ids. Every message on it must then come from that node.
+ * </p>
+ */
+class TcpClusterBus implements ClusterBus {
+    private static final int HELLO_MAGIC = 0x52505343; // "RPSC"
+    private static final int NONCE_SIZE = 32;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int PEER_QUEUE_CAPACITY = 8192;
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private final String nodeId;
+    private final Map<String, InetSocketAddress> nodes;
+    private final byte[] secret;
+    private final SecureRandom nonces = new SecureRandom();
+    private final Map<String, Peer> peers = new HashMap<>(); // every other node; fixed once built
+    private volatile ServerSocket serverSocket;
+    private volatile boolean isRunning = false;
+    private volatile Handler handler;
+
+    private void info(String message) {
+        ServerLog.log(ServerLog.Level.INFO, Color.GREEN, () -> String.format("TcpBus[%s]: %s", nodeId, message));
+    }
+
+    /**
+     * Outbound side of one other node: senders only enqueue encoded messages,
+     * its writer thread owns the connection
+     */
+    private static final class Peer {
+        final String nodeId;
+        final OutboundQueue queue = new OutboundQueue(PEER_QUEUE_CAPACITY, OverflowPolicy.DISCONNECT, 0);
+        Thread writer;
+        volatile Socket socket; // null while not connected
+        volatile long retryAt; // System.nanoTime() before which sends are refused
+        long backoffMillis = INITIAL_BACKOFF_MILLIS;
+
+        Peer(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        synchronized void up(Socket socket) {
+            this.socket = socket;
+            backoffMillis = INITIAL_BACKOFF_MILLIS;
+        }
+
+        /**
+         * @param failed the connection that failed, null if connecting failed
+         * @return millis until the next attempt or -1 if that connection was
+         *         already handled
+         */
+        synchronized long down(Socket failed) {
+            if (failed != socket) {
+                return -1;
+            }
+            long delay = backoffMillis;
+            if (failed != null) {
+                closeQuietly(failed);
+                socket = null;
+            } else {
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS); // for the next failed attempt
+            }
+            retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            queue.clear();
+            return delay;
+        }
+    }
+
+    /**
+     * @param nodeId this node
+     * @param nodes  bus address of every node in the cluster, this one included
+     * @param secret shared by every node; required
+     */
+    TcpClusterBus(String nodeId, Map<String, InetSocketAddress> nodes, String secret) {
+        this.nodeId = nodeId;
+        this.nodes = nodes;
+        this.secret = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        for (String node : nodes.keySet()) {
+            if (!node.equals(nodeId)) {
+                peers.put(node, new Peer(node));
+            }
+        }
+    }
+
+    @Override
+    public void start(Handler handler) throws IOException {
+        InetSocketAddress address = nodes.get(nodeId);
+        if (address == null) {
+            throw new IOException("No bus address for node " + nodeId);
+        }
+        if (secret.length == 0) {
+            throw new IOException("The tcp cluster bus needs --cluster-secret (or CLUSTER_SECRET)");
+        }
+        ServerSocket listener = new ServerSocket();
+        listener.bind(address); // only the configured interface, not every one
+        serverSocket = listener;
+        this.handler = handler;
+        isRunning = true;
+        Thread acceptor = new Thread(() -> acceptLoop(handler), "ClusterBus-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        for (Peer peer : peers.values()) {
+            peer.writer = new Thread(() -> writeLoop(peer), "ClusterBus-peer-" + peer.nodeId);
+            peer.writer.setDaemon(true);
+            peer.writer.start();
+        }
+        info("Listening on " + address);
+    }
+
+    private void acceptLoop(Handler handler) {
+        while (isRunning) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> readLoop(socket, handler), "ClusterBus-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (isRunning) {
+                    info("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket, Handler handler) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            String peerId = acceptHello(socket, in);
+            if (peerId == null) {
+                return;
+            }
+            while (isRunning) {
+                ClusterMessage message = ClusterMessage.readFrom(in);
+                if (!peerId.equals(message.from)) {
+                    info(String.format("Node %s sent a message as %s; dropping the connection", peerId, message.from));
+                    return;
+                }
+                handler.onMessage(message);
+            }
+        } catch (EOFException e) {
+            // peer closed its end
+        } catch (IOException e) {
+            if (isRunning) {
+                info("Peer connection lost: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Accepting side of the hello
+     *
+     * @return the verified node id or null if the connection was refused
+     */
+    private String acceptHello(Socket socket, DataInputStream in) throws IOException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        nonces.nextBytes(nonce);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(HELLO_MAGIC);
+        out.write(nonce);
+        out.flush();
+        String peerId = null;
+        boolean verified = false;
+        if (in.readInt() == HELLO_MAGIC) {
+            peerId = in.readUTF();
+            byte[] mac = new byte[in.readUnsignedByte()];
+            in.readFully(mac);
+            verified = nodes.containsKey(peerId) && !peerId.equals(nodeId)
+                    && MessageDigest.isEqual(mac, helloMac(nonce, peerId, nodeId));
+        }
+        if (!verified) {
+            info(String.format("Refused bus connection from %s (claimed node %s)", socket.getRemoteSocketAddress(),
+                    peerId));
+            closeQuietly(socket);
+            return null;
+        }
+        socket.setSoTimeout(0);
+        return peerId;
+    }
+
+    /**
+     * Connecting side of the hello
+     */
+    private void sendHello(Socket socket, String target) throws IOException {
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        if (in.readInt() != HELLO_MAGIC) {
+            throw new IOException("not a cluster bus");
+        }
+        byte[] nonce = new byte[NONCE_SIZE];
+        in.readFully(nonce);
+        byte[] mac = helloMac(nonce, nodeId, target);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(HELLO_MAGIC);
+        out.writeUTF(nodeId);
+        out.writeByte(mac.length);
+        out.write(mac);
+        out.flush();
+        socket.setSoTimeout(0);
+    }
+
+    /**
+     * @return HMAC-SHA256 over the nonce, the connecting and the accepting node
+     */
+    private byte[] helloMac(byte[] nonce, String from, String to) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update(nonce);
+            mac.update((from + "\n" + to).getBytes(StandardCharsets.UTF_8));
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    @Override
+    public boolean send(String nodeId, ClusterMessage message) {
+        Peer peer = peers.get(nodeId);
+        if (peer == null || !isRunning || System.nanoTime() < peer.retryAt) {
+            return false; // unknown, or failed recently and still backing off
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            message.writeTo(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            info("Unable to encode message: " + e.getMessage());
+            return false;
+        }
+        if (!peer.queue.offer(bytes.toByteArray(), false)) {
+            info(String.format("Queue to node %s is full", nodeId));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writer thread of one peer: connects on demand (hello included) and writes
+     * whatever is queued, one flush per batch
+     */
+    private void writeLoop(Peer peer) {
+        DataOutputStream out = null;
+        while (isRunning) {
+            byte[] message;
+            try {
+                message = peer.queue.take();
+            } catch (InterruptedException e) {
+                break; // close()
+            }
+            Socket socket = peer.socket;
+            try {
+                if (socket == null) {
+                    socket = dial(peer.nodeId);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    peer.up(socket);
+                    watch(peer, socket);
+                }
+                do {
+                    out.write(message);
+                } while ((message = peer.queue.poll()) != null);
+                out.flush();
+            } catch (IOException e) {
+                if (isRunning) {
+                    info(String.format("Can't reach node %s: %s", peer.nodeId, e.getMessage()));
+                    nodeDown(peer, socket);
+                }
+            }
+        }
+    }
+
+    private Socket dial(String nodeId) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(nodes.get(nodeId), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            sendHello(socket, nodeId);
+            return socket;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    /**
+     * Peers never write on our outbound connection, so a read only returns when
+     * the node went away; that's the quickest way to notice a crashed node
+     */
+    private void watch(Peer peer, Socket socket) {
+        Thread watcher = new Thread(() -> {
+            try {
+                while (socket.getInputStream().read() >= 0) {
+                    // nothing is expected
+                }
+            } catch (IOException e) {
+                // closed by us or reset by the peer
+            }
+            if (isRunning) {
+                nodeDown(peer, socket);
+            }
+        }, "ClusterBus-watch-" + peer.nodeId);
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Reports the node once per lost connection (or failed connect); anything
+     * still queued for it is dropped
+     *
+     * @param peer
+     * @param socket the connection that failed, null if connecting failed
+     */
+    private void nodeDown(Peer peer, Socket socket) {
+        long delay = peer.down(socket);
+        if (delay < 0) {
+            return; // the writer and the watcher both noticed
+        }
+        info(String.format("Node %s is down; next attempt in %sms", peer.nodeId, delay));
+        handler.onNodeDown(peer.nodeId);
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        ServerSocket current = serverSocket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+        for (Peer peer : peers.values()) {
+            peer.writer.interrupt();
+            Socket socket = peer.socket;
+            if (socket != null) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
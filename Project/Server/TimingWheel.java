@@ -0,0 +1,254 @@
+package Project.Server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Project.Common.TextFX.Color;
+
+/**
+ * Hashed timing wheel shared by the whole server (handshake deadlines, round
+ * timers, periodic jobs).
+ * <p>
+ * A single worker thread advances one bucket per tick, so the number of timer
+ * threads stays at one no matter how many connections or rooms exist.
+ * schedule() and cancel() are O(1): both only append to a lock-free queue that
+ * the worker applies on its next tick, and a cancelled timeout is unlinked
+ * from its bucket's doubly linked list directly.
+ * </p>
+ * <p>
+ * Tasks run on the worker thread and must be short; anything heavier should
+ * hand itself off to another executor.
+ * </p>
+ */
+public class TimingWheel {
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean isRunning = true;
+    private long tick = 0; // worker thread only
+
+    private void info(String message) {
+        ServerLog.log(ServerLog.Level.INFO, Color.WHITE, () -> String.format("TimingWheel: %s", message));
+    }
+
+    /**
+     * @param tick       resolution of the wheel
+     * @param unit
+     * @param bucketsPow wheel has 2^bucketsPow buckets
+     */
+    public TimingWheel(long tick, TimeUnit unit, int bucketsPow) {
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        this.wheel = new Bucket[1 << bucketsPow];
+        this.mask = wheel.length - 1;
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        worker = new Thread(this::run, "TimingWheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Runs the task once after the delay (rounded up to the next tick)
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return a handle that can cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Runs the task every period until the returned handle is cancelled
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        Timeout handle = new Timeout(null, 0);
+        scheduleRepeat(handle, task, unit.toNanos(period));
+        return handle;
+    }
+
+    private void scheduleRepeat(Timeout handle, Runnable task, long periodNanos) {
+        Timeout next = schedule(() -> {
+            task.run();
+            if (!handle.isCancelled()) {
+                scheduleRepeat(handle, task, periodNanos);
+            }
+        }, periodNanos, TimeUnit.NANOSECONDS);
+        handle.chain(next);
+    }
+
+    public void stop() {
+        isRunning = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (isRunning) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!isRunning) {
+                        break;
+                    }
+                }
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // anything already overdue goes in the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * Handle for a scheduled task
+     */
+    public final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private volatile Timeout chained; // current run of a repeating task
+        // worker thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running if it hasn't already
+         *
+         * @return true if this call cancelled it
+         */
+        public boolean cancel() {
+            Timeout current = chained;
+            if (current != null) {
+                current.cancel();
+            }
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void chain(Timeout next) {
+            chained = next;
+            if (isCancelled()) {
+                next.cancel();
+            }
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                info("Scheduled task failed");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, only touched by the worker thread
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
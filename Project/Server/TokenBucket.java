@@ -0,0 +1,83 @@
+package Project.Server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classic token bucket: refilled continuously at a fixed rate, holding at most
+ * burst tokens. Used for connection admission (per source address) and for
+ * inbound payloads (per client and kind of payload).
+ * <p>
+ * Refilling is lazy, done from the caller's timestamp, so an idle bucket costs
+ * nothing.
+ * </p>
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens; // negative while reservations are outstanding
+    private long refilledAt;
+
+    /**
+     * Starts full
+     *
+     * @param ratePerSecond
+     * @param burst
+     * @param now           System.nanoTime()
+     */
+    TokenBucket(double ratePerSecond, double burst, long now) {
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refilledAt = now;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return true if a token was available (and is now taken)
+     */
+    synchronized boolean tryTake(long now) {
+        refill(now);
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Takes a token now or reserves the next one, as long as it's no further
+     * away than maxWaitNanos
+     *
+     * @param now          System.nanoTime()
+     * @param maxWaitNanos
+     * @return 0 if a token was available, the nanos until the reserved one is,
+     *         or -1 if nothing was taken
+     */
+    synchronized long reserve(long now, long maxWaitNanos) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens--;
+        return wait;
+    }
+
+    /**
+     * @param now       System.nanoTime()
+     * @param idleNanos
+     * @return true if nothing was taken for idleNanos (the bucket is full again)
+     */
+    synchronized boolean isIdle(long now, long idleNanos) {
+        return now - refilledAt > idleNanos;
+    }
+}
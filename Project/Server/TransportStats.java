@@ -0,0 +1,33 @@
+package Project.Server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide write counters, shared by every connection regardless of
+ * transport.
+ * <p>
+ * flushes counts how often a connection pushed its pending bytes out and
+ * socketWrites counts calls that actually reach the socket (write/writev
+ * syscalls); comparing them against framesWritten shows how well writes are
+ * being coalesced. framesDropped counts frames the DROP_OLDEST overflow
+ * policy discarded before they were written.
+ * </p>
+ */
+final class TransportStats {
+    static final LongAdder framesWritten = new LongAdder();
+    static final LongAdder bytesWritten = new LongAdder();
+    static final LongAdder flushes = new LongAdder();
+    static final LongAdder socketWrites = new LongAdder();
+    static final LongAdder framesDropped = new LongAdder();
+
+    private TransportStats() {
+    }
+
+    static String summary() {
+        long frames = framesWritten.sum();
+        long flushCount = flushes.sum();
+        return String.format("frames=%s bytes=%s flushes=%s socketWrites=%s framesPerFlush=%.2f dropped=%s",
+                frames, bytesWritten.sum(), flushCount, socketWrites.sum(),
+                flushCount == 0 ? 0.0 : (double) frames / flushCount, framesDropped.sum());
+    }
+}
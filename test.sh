@@ -0,0 +1,14 @@
+#!/bin/bash
+# Compiles Project and the test programs under test/ into test-out, then runs
+# every *Test class; stops at the first one that fails
+set -e
+wd=$(pwd)
+rm -rf test-out
+javac --release 21 --enable-preview -d test-out/main $(find Project -name "*.java")
+javac --release 21 --enable-preview -cp test-out/main -d test-out/test $(find test -name "*.java")
+cd test
+for test in $(find . -name "*Test.java" | sed 's|^\./||; s|\.java$||; s|/|.|g'); do
+    echo "== $test"
+    java --enable-preview -cp "$wd/test-out/main:$wd/test-out/test" "$test"
+done
+cd "$wd"
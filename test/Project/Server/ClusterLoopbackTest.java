@@ -0,0 +1,85 @@
+package Project.Server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import Project.Common.PayloadType;
+
+/**
+ * Two-node cluster over the TCP bus on loopback: starts each node as its own
+ * JVM, connects a client to each and checks that a room hosted by one node
+ * works for a client of the other.
+ * <p>
+ * Lives under test/ (same package, so it can use ClusterRing) and isn't part
+ * of the server build; test.sh compiles and runs it. Exits with 1 (and prints
+ * both nodes' logs) on failure.
+ * </p>
+ */
+public class ClusterLoopbackTest {
+
+    public static void main(String[] args) throws Exception {
+        int[] ports = TestServer.freePorts(4);
+        String nodes = String.format("--cluster-nodes=a@localhost:%s,b@localhost:%s", ports[2], ports[3]);
+        Map<String, String> env = Map.of("CLUSTER_SECRET", UUID.randomUUID().toString());
+        boolean passed;
+        try (TestServer nodeA = TestServer.start("a", "Node a of cluster", env, String.valueOf(ports[0]),
+                "--node-id=a", nodes);
+                TestServer nodeB = TestServer.start("b", "Node b of cluster", env, String.valueOf(ports[1]),
+                        "--node-id=b", nodes)) {
+            passed = run(ports[0], ports[1]);
+        }
+        if (!passed) {
+            TestServer.printLogs();
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    private static String roomOwnedBy(String node) {
+        ClusterRing ring = new ClusterRing(List.of("a", "b"));
+        for (int i = 0;; i++) {
+            if (ring.owner("loop" + i).equals(node)) {
+                return "loop" + i;
+            }
+        }
+    }
+
+    private static boolean run(int portA, int portB) throws Exception {
+        String room = roomOwnedBy("b");
+        String localRoom = roomOwnedBy("a");
+        try (TestClient alice = new TestClient("alice", portA); TestClient bob = new TestClient("bob", portB)) {
+            alice.expectClientId();
+            bob.expectClientId();
+
+            // alice's node relays her into a room node b hosts
+            alice.send(PayloadType.ROOM_CREATE, room);
+            alice.expectMessage(String.format("Room[%s] You joined the room", room));
+            bob.send(PayloadType.ROOM_JOIN, room);
+            bob.expectMessage(String.format("Room[%s] You joined the room", room));
+
+            // room listings cover both nodes
+            alice.expectListed("loop", room, true);
+            bob.send(PayloadType.ROOM_CREATE, localRoom);
+            bob.expectMessage(String.format("Room[%s] You joined the room", localRoom));
+            bob.expectListed("loop", localRoom, true);
+            bob.send(PayloadType.ROOM_JOIN, room);
+            bob.expectMessage(String.format("Room[%s] You joined the room", room));
+            alice.expectListed("loop", localRoom, false); // closed once bob left it
+
+            alice.send(PayloadType.MESSAGE, "hello from node a");
+            bob.expectMessage("hello from node a");
+            alice.expectMessage("hello from node a");
+            bob.send(PayloadType.MESSAGE, "hello from node b");
+            alice.expectMessage("hello from node b");
+
+            // leaving a remote room puts alice back in her own node's lobby
+            alice.send(PayloadType.ROOM_LEAVE, null);
+            alice.expectMessage("Room[lobby] You joined the room");
+            return true;
+        } catch (AssertionError e) {
+            System.out.println("FAIL: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package Project.Server;
+
+import java.util.Map;
+
+import Project.Common.PayloadType;
+
+/**
+ * /spectate &lt;room&gt; moves the sender into the game room and marks it a
+ * spectator there, both from the lobby and from another game room.
+ * <p>
+ * Runs a standalone server in its own JVM; see test.sh. Exits with 1 (and
+ * prints the server's log) on failure.
+ * </p>
+ */
+public class SpectateTest {
+
+    public static void main(String[] args) throws Exception {
+        int port = TestServer.freePorts(1)[0];
+        boolean passed;
+        try (TestServer server = TestServer.start("server", "Waiting for next client", Map.of(),
+                String.valueOf(port))) {
+            passed = run(port);
+        }
+        if (!passed) {
+            TestServer.printLogs();
+            System.exit(1);
+        }
+        System.out.println("PASS");
+    }
+
+    private static void expectNotice(TestClient client, String text) throws InterruptedException {
+        client.expect("\"" + text + "\"", payload -> payload.getPayloadType() == PayloadType.PICKED_NOTICE
+                && payload.getMessage() != null && payload.getMessage().contains(text));
+    }
+
+    private static boolean run(int port) throws Exception {
+        try (TestClient player = new TestClient("player", port); TestClient watcher = new TestClient("watcher", port)) {
+            player.expectClientId();
+            watcher.expectClientId();
+            player.send(PayloadType.ROOM_CREATE, "arena");
+            player.expectMessage("Room[arena] You joined the room");
+
+            // from the lobby
+            watcher.send(PayloadType.MESSAGE, "/spectate arena");
+            watcher.expectMessage("Room[arena] You joined the room");
+            watcher.expectMessage("You joined as a spectator");
+            expectNotice(player, "joined as a spectator");
+
+            // from another game room
+            watcher.send(PayloadType.ROOM_CREATE, "side");
+            watcher.expectMessage("Room[side] You joined the room");
+            watcher.send(PayloadType.MESSAGE, "/spectate arena");
+            watcher.expectMessage("Room[arena] You joined the room");
+            watcher.expectMessage("You joined as a spectator");
+            expectNotice(player, "joined as a spectator");
+            return true;
+        } catch (AssertionError e) {
+            System.out.println("FAIL: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package Project.Server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import Project.Common.ConnectionPayload;
+import Project.Common.Payload;
+import Project.Common.PayloadCodec;
+import Project.Common.PayloadType;
+import Project.Common.RoomResultPayload;
+
+/**
+ * A client speaking PayloadCodec frames for the test programs; everything but
+ * PINGs is queued for expect()
+ */
+final class TestClient implements AutoCloseable {
+    static final long TIMEOUT_MILLIS = 10000;
+
+    private final String name;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final BlockingQueue<Payload> received = new LinkedBlockingQueue<>();
+
+    /**
+     * Connects and sends CLIENT_CONNECT
+     */
+    TestClient(String name, int port) throws IOException {
+        this.name = name;
+        this.socket = new Socket("localhost", port);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    Payload payload = PayloadCodec.read(in);
+                    if (payload.getPayloadType() != PayloadType.PING) {
+                        received.add(payload);
+                    }
+                }
+            } catch (IOException e) {
+                // closed
+            }
+        }, "test-" + name);
+        reader.setDaemon(true);
+        reader.start();
+        ConnectionPayload connect = new ConnectionPayload();
+        connect.setPayloadType(PayloadType.CLIENT_CONNECT);
+        connect.setClientName(name);
+        send(connect);
+    }
+
+    void send(PayloadType type, String message) throws IOException {
+        Payload payload = new Payload();
+        payload.setPayloadType(type);
+        payload.setMessage(message);
+        send(payload);
+    }
+
+    private void send(Payload payload) throws IOException {
+        PayloadCodec.write(out, payload);
+        out.flush();
+    }
+
+    /**
+     * Skips payloads until one matches
+     *
+     * @throws AssertionError if none did within TIMEOUT_MILLIS
+     */
+    void expect(String what, Predicate<Payload> match) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            Payload payload = received.poll(remaining, TimeUnit.MILLISECONDS);
+            if (payload != null && match.test(payload)) {
+                return;
+            }
+        }
+        throw new AssertionError(String.format("%s never got %s", name, what));
+    }
+
+    /**
+     * Skips payloads until one of the type arrives
+     *
+     * @throws AssertionError if none did within TIMEOUT_MILLIS
+     */
+    Payload next(PayloadType type) throws InterruptedException {
+        Payload[] found = new Payload[1];
+        expect("a " + type, payload -> {
+            found[0] = payload;
+            return payload.getPayloadType() == type;
+        });
+        return found[0];
+    }
+
+    /**
+     * Asks for the rooms starting with prefix until the answer does (or doesn't)
+     * include the room; other nodes learn about rooms asynchronously
+     *
+     * @throws AssertionError if it never did within TIMEOUT_MILLIS
+     */
+    void expectListed(String prefix, String room, boolean listed) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            send(PayloadType.ROOM_LIST, prefix);
+            RoomResultPayload page = (RoomResultPayload) next(PayloadType.ROOM_LIST);
+            if (page.getRooms() != null && page.getRooms().contains(room) == listed) {
+                return;
+            }
+            Thread.sleep(500); // stays under the default room request limit (2/s)
+        }
+        throw new AssertionError(String.format("%s never saw %s %s", name, room, listed ? "listed" : "unlisted"));
+    }
+
+    void expectClientId() throws InterruptedException {
+        expect("a client id", payload -> payload.getPayloadType() == PayloadType.CLIENT_ID);
+    }
+
+    void expectMessage(String text) throws InterruptedException {
+        expect("\"" + text + "\"", payload -> payload.getPayloadType() == PayloadType.MESSAGE
+                && payload.getMessage() != null && payload.getMessage().contains(text));
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,113 @@
+package Project.Server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Server running in its own JVM (Server is a singleton, so one per process)
+ * for the test programs. Its output is collected so a failing test can print
+ * it.
+ */
+final class TestServer implements AutoCloseable {
+    private static final List<String> logs = new ArrayList<>(); // every server's, in arrival order
+
+    private final Process process;
+
+    private TestServer(Process process) {
+        this.process = process;
+    }
+
+    /**
+     * Starts a server with the same classpath (and --enable-preview) as this
+     * JVM and waits until it logged readyLine
+     *
+     * @param label     prefixed to its log lines
+     * @param readyLine
+     * @param env       extra environment variables
+     * @param args      Server's command line
+     * @throws IllegalStateException if it isn't ready within
+     *                               TestClient.TIMEOUT_MILLIS
+     */
+    static TestServer start(String label, String readyLine, Map<String, String> env, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("--enable-preview")) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Server.class.getName());
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        builder.environment().putAll(env);
+        Process process = builder.start();
+        CountDownLatch ready = new CountDownLatch(1);
+        Thread pump = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    synchronized (logs) {
+                        logs.add(label + "> " + line);
+                    }
+                    if (line.contains(readyLine)) {
+                        ready.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                // server exited
+            }
+        }, "log-" + label);
+        pump.setDaemon(true);
+        pump.start();
+        if (!ready.await(TestClient.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            process.destroy();
+            printLogs();
+            throw new IllegalStateException("Server " + label + " didn't start");
+        }
+        return new TestServer(process);
+    }
+
+    static void printLogs() {
+        synchronized (logs) {
+            logs.forEach(System.out::println);
+        }
+    }
+
+    /**
+     * @return ports that were free a moment ago
+     */
+    static int[] freePorts(int count) throws IOException {
+        int[] ports = new int[count];
+        List<ServerSocket> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocket socket = new ServerSocket(0);
+                held.add(socket);
+                ports[i] = socket.getLocalPort();
+            }
+        } finally {
+            for (ServerSocket socket : held) {
+                socket.close();
+            }
+        }
+        return ports;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        process.waitFor(5, TimeUnit.SECONDS);
+    }
+}